@@ -1,8 +1,9 @@
 package net.rahka.chess.game;
 
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import lombok.Setter;
+import net.rahka.chess.game.agent.heuristics.Heuristic;
+import net.rahka.chess.game.agent.heuristics.IncrementalHeuristic;
 
 import java.util.*;
 
@@ -12,646 +13,575 @@ public class Board {
 		return (-0x8000000000000000L >>> (63 - (y * 8 + x)));
 	}
 
+	/**
+	 * Generation stage of captures and promotions
+	 */
+	public static final int CAPTURES = 1;
+
+	/**
+	 * Generation stage of moves that neither capture nor promote
+	 */
+	public static final int QUIETS = 2;
+
+	public static final int ALL_MOVES = CAPTURES | QUIETS;
+
 	private static final PieceMoves[] PIECE_MOVES = new PieceMoves[] {
 			Board::getWhitePawnMoves,
-			Board::getRookMoves,
-			Board::getKnightMoves,
-			Board::getBishopMoves,
-			Board::getQueenMoves,
-			Board::getKingMoves,
+			Board::getPieceMoves,
+			Board::getPieceMoves,
+			Board::getPieceMoves,
+			Board::getPieceMoves,
+			Board::getPieceMoves,
 			Board::getBlackPawnMoves,
-			Board::getRookMoves,
-			Board::getKnightMoves,
-			Board::getBishopMoves,
-			Board::getQueenMoves,
-			Board::getKingMoves,
+			Board::getPieceMoves,
+			Board::getPieceMoves,
+			Board::getPieceMoves,
+			Board::getPieceMoves,
+			Board::getPieceMoves,
 	};
 
-	long[] state;
-
-	@Getter
-	private State boardState;
-
-	@Getter @Setter
-	private BoardStateChangeHandler onBoardStateChangeHandler;
+	private static final PieceAttacks[] PIECE_ATTACKS = new PieceAttacks[] {
+			(square, all) -> Board.WHITE_PAWN_ATTACKS[square],
+			SlidingAttacks::rook,
+			(square, all) -> Board.KNIGHT_ATTACKS[square],
+			SlidingAttacks::bishop,
+			SlidingAttacks::queen,
+			(square, all) -> Board.KING_ATTACKS[square],
+			(square, all) -> Board.BLACK_PAWN_ATTACKS[square],
+			SlidingAttacks::rook,
+			(square, all) -> Board.KNIGHT_ATTACKS[square],
+			SlidingAttacks::bishop,
+			SlidingAttacks::queen,
+			(square, all) -> Board.KING_ATTACKS[square],
+	};
 
-	public Board(long[] state) {
-		this.state = Arrays.copyOf(state, 12);
+	private static final long[] KNIGHT_ATTACKS = new long[64];
 
-		updateMoves();
-	}
+	private static final long[] KING_ATTACKS = new long[64];
 
-	public void move(Move move) {
-		Piece[] adversaries = move.piece.adversaries();
+	private static final long[] WHITE_PAWN_ATTACKS = new long[64];
 
-		long victim = (move.move & state[move.piece.index]) ^ move.move;
+	private static final long[] BLACK_PAWN_ATTACKS = new long[64];
 
-		state[move.piece.index] ^= move.move;
-		if (victim != 0) {
-			for (Piece adversary : adversaries) {
-				if ((state[adversary.index] & victim) != 0) {
-					state[adversary.index] = state[adversary.index] ^ victim;
-				}
-			}
-		}
+	static {
+		int[][] knightOffsets = {{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}};
+		int[][] kingOffsets = {{1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1}, {1, -1}};
+		int[][] whitePawnOffsets = {{-1, 1}, {1, 1}};
+		int[][] blackPawnOffsets = {{-1, -1}, {1, -1}};
 
-		if (move.spawn != null) {
-			state[move.piece.index] ^= victim;
-			state[move.spawn.index] |= victim;
+		for (int i = 0; i < 64; i++) {
+			KNIGHT_ATTACKS[i] = leaperAttacks(i % 8, i / 8, knightOffsets);
+			KING_ATTACKS[i] = leaperAttacks(i % 8, i / 8, kingOffsets);
+			WHITE_PAWN_ATTACKS[i] = leaperAttacks(i % 8, i / 8, whitePawnOffsets);
+			BLACK_PAWN_ATTACKS[i] = leaperAttacks(i % 8, i / 8, blackPawnOffsets);
 		}
+	}
 
-		var state = updateMoves();
-
-		if (onBoardStateChangeHandler != null) {
-			onBoardStateChangeHandler.onStateChange(move, state);
+	private static long leaperAttacks(int x, int y, int[][] offsets) {
+		long attacks = 0;
+		for (int[] offset : offsets) {
+			int toX = x + offset[0], toY = y + offset[1];
+			if (toX >= 0 && toX < 8 && toY >= 0 && toY < 8) {
+				attacks |= kernelOf(toX, toY);
+			}
 		}
+		return attacks;
 	}
 
-	public long getAllPieces() {
-		return  state[Piece.WHITE_PAWN.index] |
-				state[Piece.WHITE_ROOK.index] |
-				state[Piece.WHITE_KNIGHT.index] |
-				state[Piece.WHITE_BISHOP.index] |
-				state[Piece.WHITE_QUEEN.index] |
-				state[Piece.WHITE_KING.index] |
-				state[Piece.BLACK_PAWN.index] |
-				state[Piece.BLACK_ROOK.index] |
-				state[Piece.BLACK_KNIGHT.index] |
-				state[Piece.BLACK_BISHOP.index] |
-				state[Piece.BLACK_QUEEN.index] |
-				state[Piece.BLACK_KING.index];
-	}
+	long[] state;
 
-	public long getAllWhitePieces() {
-		return  state[Piece.WHITE_PAWN.index] |
-				state[Piece.WHITE_ROOK.index] |
-				state[Piece.WHITE_KNIGHT.index] |
-				state[Piece.WHITE_BISHOP.index] |
-				state[Piece.WHITE_QUEEN.index] |
-				state[Piece.WHITE_KING.index];
-	}
+	private long whitePieces, blackPieces;
 
-	public long getAllBlackPieces() {
-		return  state[Piece.BLACK_PAWN.index] |
-				state[Piece.BLACK_ROOK.index] |
-				state[Piece.BLACK_KNIGHT.index] |
-				state[Piece.BLACK_BISHOP.index] |
-				state[Piece.BLACK_QUEEN.index] |
-				state[Piece.BLACK_KING.index];
-	}
+	/**
+	 * Zobrist hash of the position, maintained incrementally by {@link #makeMove(int)} and {@link #unmakeMove()}
+	 */
+	@Getter
+	private long hash;
 
-	private State updateMoves() {
-		long[] coveredWhitePositions = new long[] {0};
-		long[] dangerousWhitePositions = new long[] {0};
+	private int[] undoMoves = new int[64];
 
-		long[] coveredBlackPositions = new long[] {0};
-		long[] dangerousBlackPositions = new long[] {0};
+	private long[] undoWhitePieces = new long[64], undoBlackPieces = new long[64], undoHashes = new long[64];
 
-		var whiteMoves = new ArrayList<Move>(140);
-		var blackMoves = new ArrayList<Move>(140);
+	private int undoSize;
 
-		long whitePositions = getAllWhitePieces();
-		long blackPositions = getAllBlackPieces();
+	private final MoveList scratch = new MoveList(32);
 
-		var positionalMoves = new ArrayList<Collection<Move>>(64);
+	private Heuristic heuristic;
 
-		long kernel = 0b000000000_00000000_00000000_00000000_00000000_00000000_00000000_00000001L;
-		for (int i = 0; i < 64; i++) {
-			List<Move> moves = null;
-			if ((kernel & whitePositions) != 0) {
-				for (Piece piece : Piece.getWhite()) {
-					if ((kernel & state[piece.index]) != 0) {
-						moves = getMoves(whiteMoves, dangerousBlackPositions, coveredWhitePositions, piece, kernel);
-					}
-				}
-			} else if ((kernel & blackPositions) != 0) {
-				for (Piece piece : Piece.getBlack()) {
-					if ((kernel & state[piece.index]) != 0) {
-						moves = getMoves(blackMoves, dangerousWhitePositions, coveredBlackPositions, piece, kernel);
-					}
-				}
-			}
+	/**
+	 * The heuristic if it is incremental, else null
+	 */
+	private IncrementalHeuristic evaluator;
 
-			positionalMoves.add(moves);
+	/**
+	 * The values of the evaluator per term, indexed by piece index times 64 plus square
+	 */
+	private int[][] evaluatorValues;
 
-			kernel <<= 1;
-		}
+	/**
+	 * The sums of the evaluator, maintained incrementally by {@link #makeMove(int)} and {@link #unmakeMove()}
+	 */
+	private int[] evaluatorSums;
+
+	@Getter
+	private State boardState;
 
-		boardState = new State(Arrays.copyOf(state, 12),
-				whitePositions,
-				blackPositions,
-				blackPositions | whitePositions,
-				Collections.unmodifiableCollection(whiteMoves),
-				Collections.unmodifiableCollection(blackMoves),
-				Collections.unmodifiableList(positionalMoves),
-				coveredBlackPositions[0],
-				dangerousBlackPositions[0],
-				coveredWhitePositions[0],
-				dangerousWhitePositions[0]);
+	@Getter @Setter
+	private BoardStateChangeHandler onBoardStateChangeHandler;
 
-		return boardState;
+	public Board(long[] state) {
+		this(state, Zobrist.hash(state));
 	}
 
-	private List<Move> getMoves(List<Move> moves, long[] dangerousPositions, long[] coveredPositions, Piece piece, long kernel) {
-		long allied, enemy;
-		if (piece.isWhite()) {
-			allied = getAllWhitePieces();
-			enemy = getAllBlackPieces();
-		} else {
-			allied = getAllBlackPieces();
-			enemy = getAllWhitePieces();
-		}
+	Board(long[] state, long hash) {
+		this.state = Arrays.copyOf(state, 12);
+		this.whitePieces = getPieces(this.state, Player.WHITE);
+		this.blackPieces = getPieces(this.state, Player.BLACK);
+		this.hash = hash;
 
-		int startIndex = moves.size();
-		PIECE_MOVES[piece.index].get(moves, dangerousPositions, coveredPositions, piece, kernel, allied, enemy);
-		int endIndex = moves.size();
+		updateBoardState();
+	}
 
-		return (startIndex != endIndex) ? new SubList<>(moves, startIndex, endIndex) : null;
+	public void move(Move move) {
+		move(encode(move));
 	}
 
-	private static void getWhitePawnMoves(Collection<Move> moves, long[] dangerousPositions, long[] coveredPositions, Piece piece, long current, long allied, long enemy) {
-		long all = enemy | allied;
+	public void move(int move) {
+		makeMove(move);
 
-		long next = current << 8;
-		if (current < 72057594037927936L && (next & all) == 0) {
-			if (next > 36028797018963968L) {
-				for (Piece ally : Piece.getWhite()) {
-					if (ally == Piece.WHITE_KING) continue;
-					var move = new Move(piece, current | next);
-					move.spawn = ally;
-					moves.add(move);
-				}
-			} else {
-				moves.add(new Move(piece,  current | next));
-			}
-		}
+		var state = updateBoardState();
 
-		long doubleNext = current << 16;
-		if (current > 128 && current < 65536 && (next & all) == 0 && (doubleNext & all) == 0) {
-			moves.add(new Move(piece,  current | doubleNext));
+		if (onBoardStateChangeHandler != null) {
+			onBoardStateChangeHandler.onStateChange(PackedMove.toMove(move), state);
 		}
+	}
 
-		long nextRight = current << 7;
-		if ((current & 0b11111111_00000001_00000001_00000001_00000001_00000001_00000001_00000001L) == 0 && (nextRight & allied) == 0) {
-			if ((nextRight & enemy) != 0) {
-				if (next > 36028797018963968L) {
-					for (Piece ally : Piece.getWhite()) {
-						if (ally == Piece.WHITE_KING) continue;
-						var move = new Move(piece, current | nextRight);
-						move.spawn = ally;
-						moves.add(move);
-					}
-				} else {
-					moves.add(new Move(piece, current | nextRight));
-				}
-			}
-			dangerousPositions[0] |= nextRight;
-		} else if ((nextRight & allied) != 0) {
-			coveredPositions[0] |= nextRight;
+	/**
+	 * Applies a move without regenerating the board state, it can be reverted with {@link #unmakeMove()}
+	 */
+	public void makeMove(int move) {
+		if (undoSize == undoMoves.length) {
+			undoMoves = Arrays.copyOf(undoMoves, undoSize * 2);
+			undoWhitePieces = Arrays.copyOf(undoWhitePieces, undoSize * 2);
+			undoBlackPieces = Arrays.copyOf(undoBlackPieces, undoSize * 2);
+			undoHashes = Arrays.copyOf(undoHashes, undoSize * 2);
 		}
 
-		long nextLeft = current << 9;
-		if ((current & 0b11111111_10000000_10000000_10000000_10000000_10000000_10000000_10000000L) == 0 && (nextLeft & allied) == 0) {
-			if ((enemy & nextLeft) != 0) {
-				if (next > 36028797018963968L) {
-					for (Piece ally : Piece.getWhite()) {
-						if (ally == Piece.WHITE_KING) continue;
-						var move = new Move(piece, current | nextLeft);
-						move.spawn = ally;
-						moves.add(move);
-					}
-				} else {
-					moves.add(new Move(piece, current | nextLeft));
-				}
-			}
-			dangerousPositions[0] |= nextLeft;
-		} else if ((nextLeft & allied) != 0) {
-			coveredPositions[0] |= nextLeft;
-		}
-	}
+		undoMoves[undoSize] = move;
+		undoWhitePieces[undoSize] = whitePieces;
+		undoBlackPieces[undoSize] = blackPieces;
+		undoHashes[undoSize] = hash;
+		undoSize++;
 
-	private static void getBlackPawnMoves(Collection<Move> moves, long[] dangerousPositions, long[] coveredPositions, Piece piece, long current, long allied, long enemy) {
-		long all = enemy | allied;
+		apply(state, move);
 
-		long next = current >>> 8;
-		if (current > 128 && (next & all) == 0) {
-			if (current < 65536) {
-				for (Piece ally : Piece.getBlack()) {
-					if (ally == Piece.BLACK_KING) continue;
-					var move = new Move(piece, current | next);
-					move.spawn = ally;
-					moves.add(move);
-				}
-			} else {
-				moves.add(new Move(piece,  current | next));
-			}
+		int fromSquare = PackedMove.from(move), toSquare = PackedMove.to(move);
+		var piece = PackedMove.piece(move);
+
+		hash ^= Zobrist.SIDE ^ Zobrist.key(piece.index, fromSquare) ^ Zobrist.key(piece.index, toSquare);
+
+		var victim = PackedMove.victim(move);
+		if (victim != null) {
+			hash ^= Zobrist.key(victim.index, toSquare);
 		}
 
-		long doubleNext = current >>> 16;
-		if (current < 72057594037927936L && current > 140737488355328L && (next & all) == 0 && (doubleNext & all) == 0) {
-			moves.add(new Move(piece,  current | doubleNext));
+		var spawn = PackedMove.spawn(move);
+		if (spawn != null) {
+			hash ^= Zobrist.key(piece.index, toSquare) ^ Zobrist.key(spawn.index, toSquare);
 		}
 
-		long nextRight = current >>> 9;
-		if ((current & 0b00000001_00000001_00000001_00000001_00000001_00000001_00000001_11111111L) == 0 && (nextRight & allied) == 0) {
-			if ((enemy & nextRight) != 0) {
-				if (current < 65536) {
-					for (Piece ally : Piece.getBlack()) {
-						if (ally == Piece.BLACK_KING) continue;
-						var move = new Move(piece, current | nextRight);
-						move.spawn = ally;
-						moves.add(move);
-					}
-				} else {
-					moves.add(new Move(piece, current | nextRight));
-				}
-			}
-			dangerousPositions[0] |= nextRight;
-		} else if ((nextRight & allied) != 0) {
-			coveredPositions[0] |= nextRight;
+		long from = 1L << fromSquare;
+		long to = 1L << toSquare;
+		if (piece.isWhite()) {
+			whitePieces ^= from | to;
+			blackPieces &= ~to;
+		} else {
+			blackPieces ^= from | to;
+			whitePieces &= ~to;
 		}
 
-		long nextLeft = current >>> 7;
-		if ((current & 0b00000001_10000000_10000000_10000000_10000000_10000000_10000000_11111111L) == 0 && (nextLeft & allied) == 0) {
-			if ((enemy & nextLeft) != 0) {
-				if (current < 65536) {
-					for (Piece ally : Piece.getBlack()) {
-						if (ally == Piece.BLACK_KING) continue;
-						var move = new Move(piece, current | nextLeft);
-						move.spawn = ally;
-						moves.add(move);
-					}
-				} else {
-					moves.add(new Move(piece, current | nextLeft));
-				}
-			}
-			dangerousPositions[0] |= nextLeft;
-		} else if ((nextLeft & allied) != 0) {
-			coveredPositions[0] |= nextLeft;
+		if (evaluator != null) {
+			updateEvaluation(move, 1);
 		}
 	}
 
-	private static void getRookMoves(Collection<Move> moves, long[] dangerousPositions, long[] coveredPositions, Piece piece, long current, long allied, long enemy) {
-		{
-			long next = current;
-			while (next < 72057594037927936L && next > 0) {
-				next = next << 8;
+	/**
+	 * Reverts the last move applied with {@link #makeMove(int)}
+	 */
+	public void unmakeMove() {
+		int move = undoMoves[--undoSize];
 
-				if ((next & allied) != 0) {
-					coveredPositions[0] |= next;
-					break;
-				}
-
-				moves.add(new Move(piece,  current | next));
-				dangerousPositions[0] |= next;
+		long from = 1L << PackedMove.from(move);
+		long to = 1L << PackedMove.to(move);
+		int piece = PackedMove.piece(move).index;
 
-				if ((next & enemy) != 0) break;
-			}
+		var spawn = PackedMove.spawn(move);
+		if (spawn != null) {
+			state[spawn.index] ^= to;
+			state[piece] ^= from;
+		} else {
+			state[piece] ^= from | to;
 		}
 
-		{
-			long next = current;
-			while (next > 128L) {
-				next = next >>> 8;
-
-				if ((next & allied) != 0) {
-					coveredPositions[0] |= next;
-					break;
-				}
+		var victim = PackedMove.victim(move);
+		if (victim != null) {
+			state[victim.index] ^= to;
+		}
 
-				moves.add(new Move(piece,  current | next));
-				dangerousPositions[0] |= next;
+		whitePieces = undoWhitePieces[undoSize];
+		blackPieces = undoBlackPieces[undoSize];
+		hash = undoHashes[undoSize];
 
-				if ((next & enemy) != 0) break;
-			}
+		if (evaluator != null) {
+			updateEvaluation(move, -1);
 		}
+	}
 
-		{
-			long next = current;
-			while ((0b00000001_00000001_00000001_00000001_00000001_00000001_00000001_00000001L & next) == 0) {
-				next = next >>> 1;
-
-				if ((next & allied) != 0) {
-					coveredPositions[0] |= next;
-					break;
-				}
+	/**
+	 * Adds or, with a sign of -1, takes back the change of a move to the sums of the evaluator
+	 */
+	private void updateEvaluation(int move, int sign) {
+		int from = PackedMove.from(move), to = PackedMove.to(move);
+		int piece = PackedMove.piece(move).index;
 
-				moves.add(new Move(piece,  current | next));
-				dangerousPositions[0] |= next;
+		var spawn = PackedMove.spawn(move);
+		int arrival = (spawn != null) ? spawn.index : piece;
+		var victim = PackedMove.victim(move);
 
-				if ((next & enemy) != 0) break;
+		for (int term = 0; term < evaluatorSums.length; term++) {
+			int[] values = evaluatorValues[term];
+			int delta = values[arrival * 64 + to] - values[piece * 64 + from];
+			if (victim != null) {
+				delta -= values[victim.index * 64 + to];
 			}
+			evaluatorSums[term] += sign * delta;
 		}
+	}
 
-		{
-			long next = current;
-			while ((0b10000000_10000000_10000000_10000000_10000000_10000000_10000000_10000000L & next) == 0) {
-				next = next << 1;
-
-				if ((next & allied) != 0) {
-					coveredPositions[0] |= next;
-					break;
+	/**
+	 * Sets the heuristic of {@link #evaluate(Player)}. The sums of an {@link IncrementalHeuristic} are kept up to date
+	 * from now on, any other heuristic looks at a fresh state of every position.
+	 */
+	public void setHeuristic(Heuristic heuristic) {
+		this.heuristic = heuristic;
+		if (!(heuristic instanceof IncrementalHeuristic)) {
+			evaluator = null;
+			return;
+		}
+
+		var evaluator = (IncrementalHeuristic) heuristic;
+		this.evaluator = evaluator;
+
+		int terms = evaluator.terms();
+		evaluatorValues = new int[terms][12 * 64];
+		evaluatorSums = new int[terms];
+		for (var piece : Piece.values()) {
+			for (int square = 0; square < 64; square++) {
+				for (int term = 0; term < terms; term++) {
+					evaluatorValues[term][piece.index * 64 + square] = evaluator.value(term, piece, square);
 				}
+			}
 
-				moves.add(new Move(piece,  current | next));
-				dangerousPositions[0] |= next;
-
-				if ((next & enemy) != 0) break;
+			for (long pieces = state[piece.index]; pieces != 0; pieces &= pieces - 1) {
+				int square = Long.numberOfTrailingZeros(pieces);
+				for (int term = 0; term < terms; term++) {
+					evaluatorSums[term] += evaluatorValues[term][piece.index * 64 + square];
+				}
 			}
 		}
 	}
 
-	private static void getBishopMoves(Collection<Move> moves, long[] dangerousPositions, long[] coveredPositions, Piece piece, long current, long allied, long enemy) {
-		{
-			long next = current;
-			while ((0b11111111_00000001_00000001_00000001_00000001_00000001_00000001_00000001L & next) == 0) {
-				next = next << 7;
-
-				if ((next & allied) != 0) {
-					coveredPositions[0] |= next;
-					break;
-				}
+	/**
+	 * @return the value of the current position by the heuristic passed to {@link #setHeuristic(Heuristic)}
+	 */
+	public int evaluate(Player player) {
+		return (evaluator != null) ? evaluator.evaluate(player, evaluatorSums) : heuristic.heuristic(player, createState());
+	}
 
-				moves.add(new Move(piece,  current | next));
-				dangerousPositions[0] |= next;
+	/**
+	 * Passes the turn to the other player, only the hash changes. It is reverted with {@link #unmakeNullMove()}.
+	 */
+	public void makeNullMove() {
+		hash ^= Zobrist.SIDE;
+	}
 
-				if ((next & enemy) != 0) break;
-			}
-		}
+	public void unmakeNullMove() {
+		hash ^= Zobrist.SIDE;
+	}
 
-		{
-			long next = current;
-			while ((0b10000000_10000000_10000000_10000000_10000000_10000000_10000000_11111111L & next) == 0) {
-				next = next >>> 7;
+	/**
+	 * Finds the {@link PackedMove} encoding of a move on the current board
+	 */
+	public int encode(Move move) {
+		long from = move.move & state[move.piece.index];
+		long to = move.move ^ from;
+
+		return PackedMove.of(move.piece,
+				Long.numberOfTrailingZeros(from),
+				Long.numberOfTrailingZeros(to),
+				pieceAt(state, move.piece.adversaries(), to),
+				move.spawn);
+	}
 
-				if ((next & allied) != 0) {
-					coveredPositions[0] |= next;
-					break;
-				}
+	static void apply(long[] state, int move) {
+		long from = 1L << PackedMove.from(move);
+		long to = 1L << PackedMove.to(move);
+		int piece = PackedMove.piece(move).index;
 
-				moves.add(new Move(piece,  current | next));
-				dangerousPositions[0] |= next;
+		state[piece] ^= from | to;
 
-				if ((next & enemy) != 0) break;
-			}
+		var victim = PackedMove.victim(move);
+		if (victim != null) {
+			state[victim.index] ^= to;
 		}
 
-		{
-			long next = current;
-			while ((0b00000001_00000001_00000001_00000001_00000001_00000001_00000001_11111111L & next) == 0) {
-				next = next >>> 9;
+		var spawn = PackedMove.spawn(move);
+		if (spawn != null) {
+			state[piece] ^= to;
+			state[spawn.index] |= to;
+		}
+	}
 
-				if ((next & allied) != 0) {
-					coveredPositions[0] |= next;
-					break;
-				}
+	/**
+	 * Creates a {@link State} of the current board, without touching {@link #getBoardState()}
+	 */
+	public State createState() {
+		return new State(Arrays.copyOf(state, 12), whitePieces, blackPieces, hash);
+	}
 
-				moves.add(new Move(piece,  current | next));
-				dangerousPositions[0] |= next;
+	public void generateMoves(Player player, MoveList moves) {
+		generateMoves(player, moves, ALL_MOVES);
+	}
 
-				if ((next & enemy) != 0) break;
-			}
+	/**
+	 * Generates the moves of one or more stages, see {@link #CAPTURES} and {@link #QUIETS}
+	 */
+	public void generateMoves(Player player, MoveList moves, int stages) {
+		if (player.isWhite()) {
+			generateMoves(state, Player.WHITE, moves, whitePieces, blackPieces, stages);
+		} else {
+			generateMoves(state, Player.BLACK, moves, blackPieces, whitePieces, stages);
 		}
+	}
 
-		{
-			long next = current;
-			while ((0b11111111_10000000_10000000_10000000_10000000_10000000_10000000_10000000L & next) == 0) {
-				next = next << 9;
-
-				if ((next & allied) != 0) {
-					coveredPositions[0] |= next;
-					break;
-				}
+	public StagedMoveGenerator stagedMoves(Player player) {
+		return stagedMoves(player, PackedMove.NONE);
+	}
 
-				moves.add(new Move(piece,  current | next));
-				dangerousPositions[0] |= next;
+	/**
+	 * Staged moves that start with the given hash move, if it can be made on the current board
+	 */
+	public StagedMoveGenerator stagedMoves(Player player, int hashMove) {
+		return stagedMoves(player, hashMove, null);
+	}
 
-				if ((next & enemy) != 0) break;
-			}
-		}
+	/**
+	 * Staged moves that start with the given hash move and are ordered by the scorer within each stage
+	 */
+	public StagedMoveGenerator stagedMoves(Player player, int hashMove, StagedMoveGenerator.MoveScorer scorer) {
+		return stagedMoves(player, hashMove, scorer, ALL_MOVES);
 	}
 
-	private static void getKnightMoves(Collection<Move> moves, long[] dangerousPositions, long[] coveredPositions, Piece piece, long current, long allied, long enemy) {
-		if ((0b00000011_00000011_00000011_00000011_00000011_00000011_00000011_00000011L & current) == 0) {
-			if ((0b11111111_00000000_00000000_00000000_00000000_00000000_00000000_00000000L & current) == 0) {
-				long rightDown = current << 6;
+	/**
+	 * Staged moves restricted to the given stages, {@link #CAPTURES} alone gives the moves of a quiescence search
+	 */
+	public StagedMoveGenerator stagedMoves(Player player, int hashMove, StagedMoveGenerator.MoveScorer scorer, int stages) {
+		return new StagedMoveGenerator().reset(this, player, hashMove, scorer, stages);
+	}
 
-				if ((rightDown & allied) == 0) {
-					moves.add(new Move(piece,  current | rightDown));
-					dangerousPositions[0] |= rightDown;
-				} else {
-					coveredPositions[0] |= rightDown;
-				}
-			}
+	/**
+	 * Checks whether a move, for example one remembered from another position, can be made on the current board
+	 */
+	public boolean isPseudoLegal(int move) {
+		var piece = PackedMove.piece(move);
+		int from = PackedMove.from(move);
+		if ((state[piece.index] & (1L << from)) == 0) return false;
 
-			if ((0b00000000_00000000_00000000_00000000_00000000_00000000_00000000_11111111L & current) == 0) {
-				long rightUp = current >>> 10;
+		scratch.clear();
+		if (piece.isWhite()) {
+			PIECE_MOVES[piece.index].get(scratch, state, piece, from, whitePieces, blackPieces, ALL_MOVES);
+		} else {
+			PIECE_MOVES[piece.index].get(scratch, state, piece, from, blackPieces, whitePieces, ALL_MOVES);
+		}
 
-				if ((rightUp & allied) == 0) {
-					moves.add(new Move(piece,  current | rightUp));
-					dangerousPositions[0] |= rightUp;
-				} else {
-					coveredPositions[0] |= rightUp;
-				}
-			}
+		for (int i = 0; i < scratch.size(); i++) {
+			if (scratch.get(i) == move) return true;
 		}
+		return false;
+	}
 
-		if ((0b11000000_11000000_11000000_11000000_11000000_11000000_11000000_11000000L & current) == 0) {
-			if ((0b11111111_00000000_00000000_00000000_00000000_00000000_00000000_00000000L & current) == 0) {
-				long leftDown = current << 10;
+	public boolean isTerminal() {
+		return state[Piece.WHITE_KING.index] == 0 || state[Piece.BLACK_KING.index] == 0;
+	}
 
-				if ((leftDown & allied) == 0) {
-					moves.add(new Move(piece,  current | leftDown));
-					dangerousPositions[0] |= leftDown;
-				} else {
-					coveredPositions[0] |= leftDown;
-				}
-			}
+	/**
+	 * @return true if the player has any pieces besides pawns and the king
+	 */
+	public boolean hasNonPawnMaterial(Player player) {
+		long pieces = (player.isWhite()) ? whitePieces : blackPieces;
+		var pawn = (player.isWhite()) ? Piece.WHITE_PAWN : Piece.BLACK_PAWN;
+		var king = (player.isWhite()) ? Piece.WHITE_KING : Piece.BLACK_KING;
+		return (pieces & ~state[pawn.index] & ~state[king.index]) != 0;
+	}
 
-			if ((0b00000000_00000000_00000000_00000000_00000000_00000000_00000000_11111111L & current) == 0) {
-				long leftUp = current >>> 6;
+	public long getBoard(Piece piece) {
+		return state[piece.index];
+	}
 
-				if ((leftUp & allied) == 0) {
-					moves.add(new Move(piece,  current | leftUp));
-					dangerousPositions[0] |= leftUp;
-				} else {
-					coveredPositions[0] |= leftUp;
-				}
-			}
-		}
+	public long getAllPieces() {
+		return whitePieces | blackPieces;
+	}
 
-		if ((0b11111111_11111111_00000000_00000000_00000000_00000000_00000000_00000000L & current) == 0) {
-			if ((0b10000000_10000000_10000000_10000000_10000000_10000000_10000000_10000000L & current) == 0) {
-				long downLeft = current << 17;
+	public long getAllWhitePieces() {
+		return whitePieces;
+	}
 
-				if ((downLeft & allied) == 0) {
-					moves.add(new Move(piece,  current | downLeft));
-					dangerousPositions[0] |= downLeft;
-				} else {
-					coveredPositions[0] |= downLeft;
-				}
-			}
+	public long getAllBlackPieces() {
+		return blackPieces;
+	}
 
-			if ((0b00000001_00000001_00000001_00000001_00000001_00000001_00000001_00000001L & current) == 0) {
-				long downRight = current << 15;
+	private State updateBoardState() {
+		boardState = createState();
 
-				if ((downRight & allied) == 0) {
-					moves.add(new Move(piece,  current | downRight));
-					dangerousPositions[0] |= downRight;
-				} else {
-					coveredPositions[0] |= downRight;
-				}
-			}
-		}
+		return boardState;
+	}
 
-		if ((0b00000000_00000000_00000000_00000000_00000000_00000000_11111111_11111111L & current) == 0) {
-			if ((0b10000000_10000000_10000000_10000000_10000000_10000000_10000000_10000000L & current) == 0) {
-				long upLeft = current >>> 15;
+	static long getPieces(long[] state, Player player) {
+		long pieces = 0;
+		for (Piece piece : Piece.of(player)) {
+			pieces |= state[piece.index];
+		}
+		return pieces;
+	}
 
-				if ((upLeft & allied) == 0) {
-					moves.add(new Move(piece,  current | upLeft));
-					dangerousPositions[0] |= upLeft;
-				} else {
-					coveredPositions[0] |= upLeft;
-				}
+	/**
+	 * Generates all pseudo-legal moves of a player, grouped by piece type
+	 */
+	static void generateMoves(long[] state, Player player, MoveList moves, long allied, long enemy, int stages) {
+		for (Piece piece : Piece.of(player)) {
+			long pieces = state[piece.index];
+			while (pieces != 0) {
+				PIECE_MOVES[piece.index].get(moves, state, piece, Long.numberOfTrailingZeros(pieces), allied, enemy, stages);
+				pieces &= pieces - 1;
 			}
+		}
+	}
 
-			if ((0b00000001_00000001_00000001_00000001_00000001_00000001_00000001_00000001L & current) == 0) {
-				long upRight = current >>> 17;
-
-				if ((upRight & allied) == 0) {
-					moves.add(new Move(piece,  current | upRight));
-					dangerousPositions[0] |= upRight;
-				} else {
-					coveredPositions[0] |= upRight;
-				}
+	/**
+	 * The squares attacked by a player, regardless of what occupies them
+	 */
+	static long getAttacks(long[] state, Player player, long all) {
+		long attacks = 0;
+		for (Piece piece : Piece.of(player)) {
+			long pieces = state[piece.index];
+			while (pieces != 0) {
+				attacks |= PIECE_ATTACKS[piece.index].get(Long.numberOfTrailingZeros(pieces), all);
+				pieces &= pieces - 1;
 			}
 		}
+		return attacks;
 	}
 
-	private static void getQueenMoves(Collection<Move> moves, long[] dangerousPositions, long[] coveredPositions, Piece piece, long current, long allied, long enemy) {
-		getBishopMoves(moves, dangerousPositions, coveredPositions, piece, current, allied, enemy);
-		getRookMoves(moves, dangerousPositions, coveredPositions, piece, current, allied, enemy);
+	private static Piece pieceAt(long[] state, Piece[] pieces, long kernel) {
+		for (Piece piece : pieces) {
+			if ((state[piece.index] & kernel) != 0) return piece;
+		}
+		return null;
 	}
 
-	private static void getKingMoves(Collection<Move> moves, long[] dangerousPositions, long[] coveredPositions, Piece piece, long current, long allied, long enemy) {
-		if ((0b00000001_00000001_00000001_00000001_00000001_00000001_00000001_00000001L & current) == 0) {
-			long right = current >>> 1;
+	private static void getWhitePawnMoves(MoveList moves, long[] state, Piece piece, int square, long allied, long enemy, int stages) {
+		if (square >= 56) return;
 
-			if ((right & allied) == 0) {
-				moves.add(new Move(piece,  current | right));
-				dangerousPositions[0] |= right;
-			} else {
-				coveredPositions[0] |= right;
-			}
+		if ((stages & CAPTURES) != 0) {
+			getPawnCaptures(moves, state, piece, square, WHITE_PAWN_ATTACKS[square] & enemy);
 		}
 
-		if ((0b10000000_10000000_10000000_10000000_10000000_10000000_10000000_10000000L & current) == 0) {
-			long left = current << 1;
-
-			if ((left & allied) == 0) {
-				moves.add(new Move(piece,  current | left));
-				dangerousPositions[0] |= left;
-			} else {
-				coveredPositions[0] |= left;
+		long all = allied | enemy;
+		if (((1L << (square + 8)) & all) == 0) {
+			if ((stages & ((square >= 48) ? CAPTURES : QUIETS)) != 0) {
+				getPawnMove(moves, piece, square, square + 8, null);
 			}
-		}
 
-		if ((0b11111111_00000000_00000000_00000000_00000000_00000000_00000000_00000000L & current) == 0) {
-			long down = current << 8;
-
-			if ((down & allied) == 0) {
-				moves.add(new Move(piece,  current | down));
-				dangerousPositions[0] |= down;
-			} else {
-				coveredPositions[0] |= down;
+			if ((stages & QUIETS) != 0 && square >= 8 && square < 16 && ((1L << (square + 16)) & all) == 0) {
+				moves.add(PackedMove.of(piece, square, square + 16));
 			}
 		}
+	}
 
-		if ((0b00000000_00000000_00000000_00000000_00000000_00000000_00000000_11111111L & current) == 0) {
-			long up = current >>> 8;
+	private static void getBlackPawnMoves(MoveList moves, long[] state, Piece piece, int square, long allied, long enemy, int stages) {
+		if (square < 8) return;
 
-			if ((up & allied) == 0) {
-				moves.add(new Move(piece,  current | up));
-				dangerousPositions[0] |= up;
-			} else {
-				coveredPositions[0] |= up;
-			}
+		if ((stages & CAPTURES) != 0) {
+			getPawnCaptures(moves, state, piece, square, BLACK_PAWN_ATTACKS[square] & enemy);
 		}
 
-		if ((0b11111111_00000001_00000001_00000001_00000001_00000001_00000001_00000001L & current) == 0) {
-			long downRight = current << 7;
+		long all = allied | enemy;
+		if (((1L << (square - 8)) & all) == 0) {
+			if ((stages & ((square < 16) ? CAPTURES : QUIETS)) != 0) {
+				getPawnMove(moves, piece, square, square - 8, null);
+			}
 
-			if ((downRight & allied) == 0) {
-				moves.add(new Move(piece,  current | downRight));
-				dangerousPositions[0] |= downRight;
-			} else {
-				coveredPositions[0] |= downRight;
+			if ((stages & QUIETS) != 0 && square >= 48 && square < 56 && ((1L << (square - 16)) & all) == 0) {
+				moves.add(PackedMove.of(piece, square, square - 16));
 			}
 		}
+	}
 
-		if ((0b11111111_10000000_10000000_10000000_10000000_10000000_10000000_10000000L & current) == 0) {
-			long downLeft = current << 9;
+	private static void getPawnCaptures(MoveList moves, long[] state, Piece piece, int square, long captures) {
+		while (captures != 0) {
+			long target = Long.lowestOneBit(captures);
+			getPawnMove(moves, piece, square, Long.numberOfTrailingZeros(target), pieceAt(state, piece.adversaries(), target));
+			captures ^= target;
+		}
+	}
 
-			if ((downLeft & allied) == 0) {
-				moves.add(new Move(piece,  current | downLeft));
-				dangerousPositions[0] |= downLeft;
-			} else {
-				coveredPositions[0] |= downLeft;
+	private static void getPawnMove(MoveList moves, Piece piece, int from, int to, Piece victim) {
+		if (to >= 56 || to < 8) {
+			for (Piece ally : piece.allies()) {
+				if (ally == Piece.WHITE_KING || ally == Piece.BLACK_KING) continue;
+				moves.add(PackedMove.of(piece, from, to, victim, ally));
 			}
+		} else {
+			moves.add(PackedMove.of(piece, from, to, victim, null));
 		}
+	}
 
-		if ((0b10000000_10000000_10000000_10000000_10000000_10000000_10000000_11111111L & current) == 0) {
-			long upLeft = current >>> 7;
+	private static void getPieceMoves(MoveList moves, long[] state, Piece piece, int square, long allied, long enemy, int stages) {
+		long targets = PIECE_ATTACKS[piece.index].get(square, allied | enemy) & ~allied;
 
-			if ((upLeft & allied) == 0) {
-				moves.add(new Move(piece,  current | upLeft));
-				dangerousPositions[0] |= upLeft;
-			} else {
-				coveredPositions[0] |= upLeft;
+		if ((stages & CAPTURES) != 0) {
+			long captures = targets & enemy;
+			while (captures != 0) {
+				long target = Long.lowestOneBit(captures);
+				moves.add(PackedMove.of(piece, square, Long.numberOfTrailingZeros(target), pieceAt(state, piece.adversaries(), target), null));
+				captures ^= target;
 			}
 		}
 
-		if ((0b00000001_00000001_00000001_00000001_00000001_00000001_00000001_11111111L & current) == 0) {
-			long upRight = current >>> 9;
-
-			if ((upRight & allied) == 0) {
-				moves.add(new Move(piece,  current | upRight));
-				dangerousPositions[0] |= upRight;
-			} else {
-				coveredPositions[0] |= upRight;
+		if ((stages & QUIETS) != 0) {
+			long quiets = targets & ~enemy;
+			while (quiets != 0) {
+				moves.add(PackedMove.of(piece, square, Long.numberOfTrailingZeros(quiets)));
+				quiets &= quiets - 1;
 			}
 		}
 	}
 
 	private interface PieceMoves {
 
-		void get(List<Move> moves, long[] dangerousPositions, long[] coveredPositions, Piece piece, long current, long allied, long enemy);
+		void get(MoveList moves, long[] state, Piece piece, int square, long allied, long enemy, int stages);
 
 	}
 
-	public interface BoardStateChangeHandler {
+	private interface PieceAttacks {
 
-		void onStateChange(Move move, State state);
+		long get(int square, long all);
 
 	}
 
-	@RequiredArgsConstructor
-	private static class SubList<T> extends AbstractList<T> {
-
-		final List<T> parent;
-		final int fromIndex, toIndex;
-
-		@Override
-		public T get(int index) {
-			if (index < 0 || index >= toIndex) throw new IndexOutOfBoundsException();
-			return parent.get(fromIndex + index);
-		}
+	public interface BoardStateChangeHandler {
 
-		@Override
-		public int size() {
-			return toIndex - fromIndex;
-		}
+		void onStateChange(Move move, State state);
 
 	}
 
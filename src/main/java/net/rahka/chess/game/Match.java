@@ -55,6 +55,9 @@ public class Match {
 	private void playMatch(Agent whiteAgent, Agent blackAgent) {
 		Board board = getBoard();
 
+		whiteAgent.onGameStart(Player.WHITE, board.getBoardState());
+		blackAgent.onGameStart(Player.BLACK, board.getBoardState());
+
 		boolean isDraw = false;
 		Player winner = null;
 		do {
@@ -72,6 +75,7 @@ public class Match {
 				//System.out.printf("White moved %s from (%d, %d) to (%d, %d)\n", move.piece, fromI % 8, fromI / 8, toI % 8, toI / 8);
 
 				board.move(move);
+				onMovePlayed(whiteAgent, blackAgent, Player.WHITE, move);
 
 				if (board.state[Piece.BLACK_KING.index] == 0) {
 					winner = Player.WHITE;
@@ -93,6 +97,7 @@ public class Match {
 				//System.out.printf("Black moved %s from (%d, %d) to (%d, %d)\n", move.piece, fromI % 8, fromI / 8, toI % 8, toI / 8);
 
 				board.move(move);
+				onMovePlayed(whiteAgent, blackAgent, Player.BLACK, move);
 
 				if (board.state[Piece.WHITE_KING.index] == 0) {
 					winner = Player.BLACK;
@@ -106,6 +111,9 @@ public class Match {
 			}
 		} while (!Thread.currentThread().isInterrupted());
 
+		whiteAgent.onGameEnd(winner);
+		blackAgent.onGameEnd(winner);
+
 		synchronized (this) {
 			if (winner != null || isDraw) {
 				this.winner = winner;
@@ -116,6 +124,12 @@ public class Match {
 		}
 	}
 
+	private void onMovePlayed(Agent whiteAgent, Agent blackAgent, Player player, Move move) {
+		var state = board.getBoardState();
+		whiteAgent.onMovePlayed(player, move, state);
+		blackAgent.onMovePlayed(player, move, state);
+	}
+
 	public synchronized void setCurrentPlayer(Player player) {
 		currentPlayer = player;
 		if (onCurrentPlayerChangeHandler != null) onCurrentPlayerChangeHandler.accept(player);
@@ -2,8 +2,7 @@ package net.rahka.chess.game;
 
 import lombok.*;
 
-import java.util.Objects;
-
+@EqualsAndHashCode
 @RequiredArgsConstructor(access = AccessLevel.PROTECTED)
 public final class Move {
 
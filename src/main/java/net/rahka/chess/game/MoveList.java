@@ -0,0 +1,89 @@
+package net.rahka.chess.game;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Growable list of moves in their {@link PackedMove} encoding, backed by an int array
+ */
+public final class MoveList {
+
+	private int[] moves;
+
+	private int size;
+
+	public MoveList() {
+		this(64);
+	}
+
+	public MoveList(int capacity) {
+		moves = new int[capacity];
+	}
+
+	public void add(int move) {
+		if (size == moves.length) {
+			moves = Arrays.copyOf(moves, size * 2);
+		}
+		moves[size++] = move;
+	}
+
+	public int get(int index) {
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException();
+		return moves[index];
+	}
+
+	public void swap(int i, int j) {
+		if (i < 0 || i >= size || j < 0 || j >= size) throw new IndexOutOfBoundsException();
+		int move = moves[i];
+		moves[i] = moves[j];
+		moves[j] = move;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * A view of the moves as {@link Move} objects, each access decodes a new {@link Move}
+	 */
+	public List<Move> asList() {
+		return asList(0, size);
+	}
+
+	public List<Move> asList(int fromIndex, int toIndex) {
+		return new MoveView(fromIndex, toIndex);
+	}
+
+	private class MoveView extends AbstractList<Move> implements RandomAccess {
+
+		final int fromIndex, toIndex;
+
+		MoveView(int fromIndex, int toIndex) {
+			this.fromIndex = fromIndex;
+			this.toIndex = toIndex;
+		}
+
+		@Override
+		public Move get(int index) {
+			if (index < 0 || fromIndex + index >= toIndex) throw new IndexOutOfBoundsException();
+			return PackedMove.toMove(moves[fromIndex + index]);
+		}
+
+		@Override
+		public int size() {
+			return toIndex - fromIndex;
+		}
+
+	}
+
+}
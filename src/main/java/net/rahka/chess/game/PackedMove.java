@@ -0,0 +1,76 @@
+package net.rahka.chess.game;
+
+/**
+ * Encodes a move into a single int so that move generation and search do not have to allocate {@link Move} objects.
+ * <pre>
+ * bits  0 -  5: from square
+ * bits  6 - 11: to square
+ * bits 12 - 15: index of the moving piece
+ * bits 16 - 19: index of the promotion piece + 1, 0 if the move is not a promotion
+ * bits 20 - 23: index of the captured piece + 1, 0 if the move is not a capture
+ * </pre>
+ * A value of {@link #NONE} never describes a legal move since from and to squares are always different.
+ */
+public final class PackedMove {
+
+	public static final int NONE = 0;
+
+	private static final int TO_SHIFT = 6;
+	private static final int PIECE_SHIFT = 12;
+	private static final int SPAWN_SHIFT = 16;
+	private static final int VICTIM_SHIFT = 20;
+
+	private PackedMove() {}
+
+	public static int of(Piece piece, int from, int to) {
+		return from | (to << TO_SHIFT) | (piece.index << PIECE_SHIFT);
+	}
+
+	public static int of(Piece piece, int from, int to, Piece victim, Piece spawn) {
+		int move = of(piece, from, to);
+		if (victim != null) move |= (victim.index + 1) << VICTIM_SHIFT;
+		if (spawn != null) move |= (spawn.index + 1) << SPAWN_SHIFT;
+		return move;
+	}
+
+	public static int from(int move) {
+		return move & 0x3F;
+	}
+
+	public static int to(int move) {
+		return (move >>> TO_SHIFT) & 0x3F;
+	}
+
+	public static Piece piece(int move) {
+		return Piece.fromIndex((move >>> PIECE_SHIFT) & 0xF);
+	}
+
+	public static Piece spawn(int move) {
+		int spawn = (move >>> SPAWN_SHIFT) & 0xF;
+		return (spawn == 0) ? null : Piece.fromIndex(spawn - 1);
+	}
+
+	public static Piece victim(int move) {
+		int victim = (move >>> VICTIM_SHIFT) & 0xF;
+		return (victim == 0) ? null : Piece.fromIndex(victim - 1);
+	}
+
+	public static boolean isCapture(int move) {
+		return (move >>> VICTIM_SHIFT) != 0;
+	}
+
+	public static boolean isPromotion(int move) {
+		return ((move >>> SPAWN_SHIFT) & 0xF) != 0;
+	}
+
+	public static long mask(int move) {
+		return (1L << from(move)) | (1L << to(move));
+	}
+
+	public static Move toMove(int move) {
+		var view = new Move(piece(move), mask(move));
+		view.spawn = spawn(move);
+		return view;
+	}
+
+}
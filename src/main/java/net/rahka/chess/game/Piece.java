@@ -21,12 +21,18 @@ public enum Piece {
 
     public int index;
 
+    private static final Piece[] indexed = values();
+
     @Getter
     private static Piece[] black = {BLACK_PAWN, BLACK_KNIGHT, BLACK_ROOK, BLACK_BISHOP, BLACK_QUEEN, BLACK_KING};
 
     @Getter
     private static Piece[] white = {WHITE_PAWN, WHITE_KNIGHT, WHITE_ROOK, WHITE_BISHOP, WHITE_QUEEN, WHITE_KING};
 
+    public static Piece fromIndex(int index) {
+        return indexed[index];
+    }
+
     public static Piece[] of(Player player) {
         if (player.isWhite()) {
             return white;
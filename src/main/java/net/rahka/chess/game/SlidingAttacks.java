@@ -0,0 +1,131 @@
+package net.rahka.chess.game;
+
+/**
+ * Magic bitboard lookup tables for rook and bishop attacks. The magic multipliers were found offline by a
+ * seeded random search, the attack tables themselves are filled in once at class load.
+ */
+final class SlidingAttacks {
+
+	private static final int[][] ROOK_DIRECTIONS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+
+	private static final int[][] BISHOP_DIRECTIONS = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+
+	private static final long[] ROOK_MAGICS = {
+			0x2200108041002200L, 0x0140200040001000L, 0x2080081000802001L, 0x5280100004800801L,
+			0x0E00041018320020L, 0x0200041008010200L, 0x0400500082012408L, 0x0100018A02284100L,
+			0x1000800090204000L, 0x0080400020100040L, 0x0025002007004010L, 0x0002802800807001L,
+			0x0008800400800800L, 0x020A800200240080L, 0x0009001409000200L, 0x00020000805C2201L,
+			0x0380014020004000L, 0x2010004020004000L, 0x00A0028020807000L, 0x0008028010008148L,
+			0x0000808004000800L, 0x0906010088040100L, 0x1001010100020004L, 0x0080020001009044L,
+			0x0080400480008220L, 0x4008208200410601L, 0x0082004200201080L, 0x8040210100100008L,
+			0x8201001100080084L, 0x840A200801104004L, 0x0002000200640128L, 0x00108782000900C4L,
+			0x0000400020800090L, 0x0800401002402000L, 0x1000801000802000L, 0x020C080080801002L,
+			0xC034008008080040L, 0x1012001002000408L, 0x8400021004000108L, 0x0000208042000104L,
+			0x8000208840148001L, 0x5000402010014008L, 0x1100200010008080L, 0x2000100100210009L,
+			0x0008000402004040L, 0x4014008002008004L, 0x0842008001004040L, 0x18001640A1020004L,
+			0x1540028000442880L, 0x00C8810134400100L, 0x1020801020420200L, 0x0008090010002100L,
+			0x8014008008000480L, 0x02A2040080020080L, 0x0501000402000100L, 0x0002044405008600L,
+			0x8040208002110843L, 0x2000110820428202L, 0x2086200070084103L, 0x2800100104210009L,
+			0x0852002004100802L, 0x4019000400080201L, 0x4000014210008804L, 0x1002042049028402L
+	};
+
+	private static final long[] BISHOP_MAGICS = {
+			0x0128283800440425L, 0x200202040C008158L, 0x00B408020054000AL, 0x00880A0320004014L,
+			0x5044042001100000L, 0x0895010842C82000L, 0x0008482844102000L, 0x0122010C02020200L,
+			0x080010A0080080B0L, 0x022008104400A220L, 0x0000484881020062L, 0x4000209200400000L,
+			0x0000040420061490L, 0x0100484110500102L, 0x0080021082084002L, 0x4018010100822000L,
+			0x003002C002926400L, 0x00108004100A0A60L, 0x0050000104102040L, 0x4009002020408211L,
+			0x4814000480A04180L, 0x4800810C10040102L, 0x0010448184142104L, 0x0101200051043000L,
+			0x400484C010101000L, 0x0401280224500400L, 0x0080405008008902L, 0x013A08008C010420L,
+			0x110901000C104002L, 0xC008082016100C08L, 0x0008510030808843L, 0x8021044401006800L,
+			0x8541484060200400L, 0x0081280800021000L, 0x100C002C00888400L, 0x0B10200800110106L,
+			0x9040020201002080L, 0x44481003201100A9L, 0x0C0808A080810821L, 0xC480808200028602L,
+			0x90082410080204A2L, 0x040A120202202000L, 0x0101022110001308L, 0x050840C010400600L,
+			0x1000200410420400L, 0xC440100460400480L, 0x3208020082108C01L, 0x8098021C00444A20L,
+			0x4510842120100000L, 0x0020820101600200L, 0xC400011041100020L, 0x00000080840C4000L,
+			0x4002002202440200L, 0x1A48842044011005L, 0x00C0900400808004L, 0x2049081080820200L,
+			0x0000441401011000L, 0x2004402202500483L, 0x0C8802220084440AL, 0x00004101020A0200L,
+			0x0708004440482880L, 0x0110224110520080L, 0x1800410822008201L, 0x8208100400840010L
+	};
+
+	private static final long[] ROOK_MASKS = new long[64];
+	private static final int[] ROOK_SHIFTS = new int[64];
+	private static final long[][] ROOK_ATTACKS = new long[64][];
+
+	private static final long[] BISHOP_MASKS = new long[64];
+	private static final int[] BISHOP_SHIFTS = new int[64];
+	private static final long[][] BISHOP_ATTACKS = new long[64][];
+
+	static {
+		for (int square = 0; square < 64; square++) {
+			initialize(square, ROOK_DIRECTIONS, ROOK_MAGICS, ROOK_MASKS, ROOK_SHIFTS, ROOK_ATTACKS);
+			initialize(square, BISHOP_DIRECTIONS, BISHOP_MAGICS, BISHOP_MASKS, BISHOP_SHIFTS, BISHOP_ATTACKS);
+		}
+	}
+
+	private SlidingAttacks() {}
+
+	static long rook(int square, long occupied) {
+		return ROOK_ATTACKS[square][(int) (((occupied & ROOK_MASKS[square]) * ROOK_MAGICS[square]) >>> ROOK_SHIFTS[square])];
+	}
+
+	static long bishop(int square, long occupied) {
+		return BISHOP_ATTACKS[square][(int) (((occupied & BISHOP_MASKS[square]) * BISHOP_MAGICS[square]) >>> BISHOP_SHIFTS[square])];
+	}
+
+	static long queen(int square, long occupied) {
+		return rook(square, occupied) | bishop(square, occupied);
+	}
+
+	private static void initialize(int square, int[][] directions, long[] magics, long[] masks, int[] shifts, long[][] attacks) {
+		long mask = relevantOccupancy(square, directions);
+		int bits = Long.bitCount(mask);
+
+		var table = new long[1 << bits];
+
+		long subset = 0;
+		do {
+			int index = (int) ((subset * magics[square]) >>> (64 - bits));
+			long reference = slowAttacks(square, subset, directions);
+			if (table[index] != 0 && table[index] != reference) {
+				throw new IllegalStateException("Magic collision on square " + square);
+			}
+			table[index] = reference;
+
+			subset = (subset - mask) & mask;
+		} while (subset != 0);
+
+		masks[square] = mask;
+		shifts[square] = 64 - bits;
+		attacks[square] = table;
+	}
+
+	private static long relevantOccupancy(int square, int[][] directions) {
+		long mask = 0;
+		for (int[] direction : directions) {
+			int x = square % 8 + direction[0], y = square / 8 + direction[1];
+			while (x + direction[0] >= 0 && x + direction[0] < 8 && y + direction[1] >= 0 && y + direction[1] < 8) {
+				mask |= Board.kernelOf(x, y);
+				x += direction[0];
+				y += direction[1];
+			}
+		}
+		return mask;
+	}
+
+	private static long slowAttacks(int square, long occupied, int[][] directions) {
+		long attacks = 0;
+		for (int[] direction : directions) {
+			int x = square % 8 + direction[0], y = square / 8 + direction[1];
+			while (x >= 0 && x < 8 && y >= 0 && y < 8) {
+				long kernel = Board.kernelOf(x, y);
+				attacks |= kernel;
+				if ((occupied & kernel) != 0) break;
+				x += direction[0];
+				y += direction[1];
+			}
+		}
+		return attacks;
+	}
+
+}
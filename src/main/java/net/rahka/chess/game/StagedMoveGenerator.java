@@ -0,0 +1,122 @@
+package net.rahka.chess.game;
+
+import java.util.Arrays;
+
+/**
+ * Yields the moves of a player in stages: an optional hash move first, then captures and promotions. Quiet moves
+ * are only generated once the captures are exhausted and only if that stage was asked for, so a search that cuts
+ * off early never pays for them. Within a stage the moves are yielded by descending {@link MoveScorer} score if a
+ * scorer is given, otherwise in generation order. The board may be changed between calls to {@link #next()} as long
+ * as every change is reverted again. A generator can be {@link #reset} for another node, so that a search can keep
+ * one per ply instead of allocating one per node.
+ */
+public final class StagedMoveGenerator {
+
+	private final MoveList moves = new MoveList(64);
+
+	private int[] scores = new int[64];
+
+	private Board board;
+
+	private Player player;
+
+	private int hashMove;
+
+	private MoveScorer scorer;
+
+	private int stages;
+
+	private int index;
+
+	private int stage;
+
+	/**
+	 * Creates a generator without moves, it has to be {@link #reset} before use
+	 */
+	public StagedMoveGenerator() {}
+
+	/**
+	 * Starts over with the moves of a player on the current board, the previous moves are forgotten
+	 *
+	 * @return this generator
+	 */
+	public StagedMoveGenerator reset(Board board, Player player, int hashMove, MoveScorer scorer, int stages) {
+		this.board = board;
+		this.player = player;
+		this.stages = stages;
+		this.hashMove = (hashMove != PackedMove.NONE && board.isPseudoLegal(hashMove)) ? hashMove : PackedMove.NONE;
+		this.scorer = scorer;
+		this.index = 0;
+		this.stage = Board.CAPTURES;
+
+		moves.clear();
+		if (this.hashMove != PackedMove.NONE) {
+			moves.add(this.hashMove);
+		}
+
+		return this;
+	}
+
+	/**
+	 * @return the next move, or {@link PackedMove#NONE} when all stages are exhausted
+	 */
+	public int next() {
+		while (true) {
+			while (index == moves.size()) {
+				if (stage == Board.CAPTURES) {
+					if ((stages & Board.CAPTURES) != 0) board.generateMoves(player, moves, Board.CAPTURES);
+					stage = Board.QUIETS;
+				} else if (stage == Board.QUIETS) {
+					if ((stages & Board.QUIETS) != 0) board.generateMoves(player, moves, Board.QUIETS);
+					stage = 0;
+				} else {
+					return PackedMove.NONE;
+				}
+
+				if (scorer != null) score(index);
+			}
+
+			if (scorer != null) pickBest();
+
+			int move = moves.get(index++);
+			if (move != hashMove || index == 1) return move;
+		}
+	}
+
+	private void score(int from) {
+		if (scores.length < moves.size()) {
+			scores = Arrays.copyOf(scores, Math.max(moves.size(), scores.length * 2));
+		}
+
+		for (int i = from; i < moves.size(); i++) {
+			scores[i] = scorer.score(moves.get(i));
+		}
+	}
+
+	/**
+	 * Swaps the highest scoring of the remaining moves to the current index, the first one wins ties
+	 */
+	private void pickBest() {
+		int best = index;
+		for (int i = index + 1; i < moves.size(); i++) {
+			if (scores[i] > scores[best]) best = i;
+		}
+
+		if (best != index) {
+			moves.swap(index, best);
+			int score = scores[index];
+			scores[index] = scores[best];
+			scores[best] = score;
+		}
+	}
+
+	public interface MoveScorer {
+
+		/**
+		 * @return the ordering score of a packed move, higher scores are yielded first
+		 */
+		int score(int move);
+
+	}
+
+}
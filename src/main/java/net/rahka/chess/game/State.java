@@ -1,14 +1,17 @@
 package net.rahka.chess.game;
 
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
-@RequiredArgsConstructor
+/**
+ * Snapshot of a board. Moves, per-square moves and threat maps are generated on first access and memoized, so
+ * a state that is only evaluated never pays for move generation.
+ */
 public class State {
 
     @Getter
@@ -17,31 +20,161 @@ public class State {
     @Getter
     private final long blackPieces, whitePieces, allPieces;
 
+    /**
+     * Zobrist hash of the position including the side to move
+     */
     @Getter
-    private final Collection<Move> whiteMoves, blackMoves;
+    private final long hash;
 
-    private final List<Collection<Move>> positionalMoves;
+    private volatile MoveList whiteMoveList, blackMoveList;
 
-    @Getter
-    private final long coveredBlackPositions, dangerousBlackPositions, coveredWhitePositions, dangerousWhitePositions;
+    private volatile Collection<Move> whiteMoves, blackMoves;
+
+    private volatile List<Collection<Move>> positionalMoves;
+
+    private volatile long[] threatMaps;
+
+    State(long[] board, long whitePieces, long blackPieces, long hash) {
+        this.board = board;
+        this.whitePieces = whitePieces;
+        this.blackPieces = blackPieces;
+        this.allPieces = whitePieces | blackPieces;
+        this.hash = hash;
+    }
+
+    /**
+     * Creates a mutable board of this state that continues its hash
+     */
+    public Board createBoard() {
+        return new Board(board, hash);
+    }
 
     public State expand(Move move) {
-        var expandedBoard = new Board(board);
+        var expandedBoard = new Board(board, hash);
         expandedBoard.move(move);
 
         return expandedBoard.getBoardState();
     }
 
+    public State expand(int move) {
+        var expandedBoard = new Board(board, hash);
+        expandedBoard.move(move);
+
+        return expandedBoard.getBoardState();
+    }
+
+    public MoveList getWhiteMoveList() {
+        var moves = whiteMoveList;
+        if (moves == null) {
+            moves = new MoveList(140);
+            Board.generateMoves(board, Player.WHITE, moves, whitePieces, blackPieces, Board.ALL_MOVES);
+            whiteMoveList = moves;
+        }
+        return moves;
+    }
+
+    public MoveList getBlackMoveList() {
+        var moves = blackMoveList;
+        if (moves == null) {
+            moves = new MoveList(140);
+            Board.generateMoves(board, Player.BLACK, moves, blackPieces, whitePieces, Board.ALL_MOVES);
+            blackMoveList = moves;
+        }
+        return moves;
+    }
+
+    public Collection<Move> getWhiteMoves() {
+        var moves = whiteMoves;
+        if (moves == null) {
+            moves = Collections.unmodifiableList(getWhiteMoveList().asList());
+            whiteMoves = moves;
+        }
+        return moves;
+    }
+
+    public Collection<Move> getBlackMoves() {
+        var moves = blackMoves;
+        if (moves == null) {
+            moves = Collections.unmodifiableList(getBlackMoveList().asList());
+            blackMoves = moves;
+        }
+        return moves;
+    }
+
     public Collection<Move> getMoves(Player player) {
         if (player.isWhite()) {
-            return whiteMoves;
+            return getWhiteMoves();
         } else {
-            return blackMoves;
+            return getBlackMoves();
+        }
+    }
+
+    public MoveList getMoveList(Player player) {
+        if (player.isWhite()) {
+            return getWhiteMoveList();
+        } else {
+            return getBlackMoveList();
         }
     }
 
     public Collection<Move> getMoves(int x, int y) {
-        return positionalMoves.get(y * 8 + x);
+        var moves = positionalMoves;
+        if (moves == null) {
+            var list = new ArrayList<Collection<Move>>(Collections.nCopies(64, null));
+            groupBySquare(getWhiteMoveList(), list);
+            groupBySquare(getBlackMoveList(), list);
+
+            moves = Collections.unmodifiableList(list);
+            positionalMoves = moves;
+        }
+        return moves.get(y * 8 + x);
+    }
+
+    /**
+     * Moves of a single piece are always generated next to each other, so every square maps to one range
+     */
+    private static void groupBySquare(MoveList moves, List<Collection<Move>> positionalMoves) {
+        int startIndex = 0;
+        for (int i = 1; i <= moves.size(); i++) {
+            int square = PackedMove.from(moves.get(startIndex));
+            if (i == moves.size() || PackedMove.from(moves.get(i)) != square) {
+                positionalMoves.set(square, moves.asList(startIndex, i));
+                startIndex = i;
+            }
+        }
+    }
+
+    private long[] getThreatMaps() {
+        var maps = threatMaps;
+        if (maps == null) {
+            long whiteAttacks = Board.getAttacks(board, Player.WHITE, allPieces);
+            long blackAttacks = Board.getAttacks(board, Player.BLACK, allPieces);
+
+            maps = new long[] {
+                    blackAttacks & blackPieces,
+                    whiteAttacks & ~whitePieces,
+                    whiteAttacks & whitePieces,
+                    blackAttacks & ~blackPieces
+            };
+            threatMaps = maps;
+        }
+        return maps;
+    }
+
+    public long getCoveredBlackPositions() {
+        return getThreatMaps()[0];
+    }
+
+    public long getDangerousBlackPositions() {
+        return getThreatMaps()[1];
+    }
+
+    public long getCoveredWhitePositions() {
+        return getThreatMaps()[2];
+    }
+
+    public long getDangerousWhitePositions() {
+        return getThreatMaps()[3];
     }
 
     public long getBoard(Piece piece) {
@@ -50,17 +183,17 @@ public class State {
 
     public long getCoveredPositions(Player player) {
         if (player.isWhite()) {
-            return coveredWhitePositions;
+            return getCoveredWhitePositions();
         } else {
-            return coveredBlackPositions;
+            return getCoveredBlackPositions();
         }
     }
 
     public long getThreatenedPositions(Player player) {
         if (player.isWhite()) {
-            return dangerousWhitePositions;
+            return getDangerousWhitePositions();
         } else {
-            return dangerousBlackPositions;
+            return getDangerousBlackPositions();
         }
     }
 
@@ -72,4 +205,18 @@ public class State {
         return Long.bitCount(board[piece.index]);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof State)) return false;
+
+        var other = (State) o;
+        return hash == other.hash && Arrays.equals(board, other.board);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hash);
+    }
+
 }
@@ -0,0 +1,44 @@
+package net.rahka.chess.game;
+
+import java.util.Random;
+
+/**
+ * Random keys for Zobrist hashing, a position hash is the XOR of the keys of every piece on its square, and the
+ * side key whenever black is to move
+ */
+final class Zobrist {
+
+	private static final long[] PIECES = new long[12 * 64];
+
+	static final long SIDE;
+
+	static {
+		var random = new Random(0x2F0B_E1A7L);
+		for (int i = 0; i < PIECES.length; i++) {
+			PIECES[i] = random.nextLong();
+		}
+		SIDE = random.nextLong();
+	}
+
+	private Zobrist() {}
+
+	static long key(int piece, int square) {
+		return PIECES[piece * 64 + square];
+	}
+
+	/**
+	 * Hashes a board from scratch, with white to move
+	 */
+	static long hash(long[] state) {
+		long hash = 0;
+		for (int piece = 0; piece < 12; piece++) {
+			long pieces = state[piece];
+			while (pieces != 0) {
+				hash ^= key(piece, Long.numberOfTrailingZeros(pieces));
+				pieces &= pieces - 1;
+			}
+		}
+		return hash;
+	}
+
+}
@@ -6,8 +6,32 @@ import net.rahka.chess.game.State;
 
 import java.util.Collection;
 
+/**
+ * A player of a {@link net.rahka.chess.game.Match}. Besides being asked for its moves, an agent is told when a game
+ * starts and ends and about every move of either side, so that it can keep what it has learned from one move to the
+ * next.
+ */
 public interface Agent {
 
 	Move getMove(Player player, Collection<Move> moves, State state);
 
+	/**
+	 * Called before the first move of a game, anything kept from an earlier game should be dropped here
+	 */
+	default void onGameStart(Player player, State state) {}
+
+	/**
+	 * Called after every move of either player
+	 *
+	 * @param state the state after the move
+	 */
+	default void onMovePlayed(Player player, Move move, State state) {}
+
+	/**
+	 * Called once a game is over or has been interrupted
+	 *
+	 * @param winner the player who won, or null if the game was drawn or interrupted
+	 */
+	default void onGameEnd(Player winner) {}
+
 }
@@ -0,0 +1,165 @@
+package net.rahka.chess.game.agent;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import net.rahka.chess.configuration.Configurable;
+import net.rahka.chess.configuration.ConfigurableInt;
+import net.rahka.chess.game.Move;
+import net.rahka.chess.game.Player;
+import net.rahka.chess.game.State;
+import net.rahka.chess.game.agent.search.TranspositionTable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Lazy SMP: helper threads run the same iterative deepening as the main search, each on its own search stack, and
+ * share nothing but a lock-free transposition table. The main search gets faster from the entries the helpers leave
+ * behind. Every helper starts at a different depth and searches the root moves in a different order, so that the
+ * threads spread out over the tree instead of all doing the same work.
+ */
+@Configurable(name = "Lazy SMP")
+@RequiredArgsConstructor
+public class LazySmpAgent implements Agent {
+
+    @Getter @ConfigurableInt(name = "Helper threads", min = 0, max = 255, def = 3)
+    final int helperThreads;
+
+    /**
+     * Settings of the search that every thread runs. Its "Threads" and "Pondering" are not used, the helpers are
+     * the threads and nothing is searched on the opponent's time, so the first search rejects anything but their
+     * defaults.
+     */
+    @Getter @Configurable(name = "Search", def = MiniMaxAgent.class)
+    final MiniMaxAgent search;
+
+    private TranspositionTable transpositionTable;
+
+    /**
+     * The main search followed by the helpers
+     */
+    private MiniMaxSearch[] searches;
+
+    private ExecutorService executor;
+
+    /**
+     * Statistics of the last search of all threads together, the iterations are those of the main search
+     */
+    @Getter
+    private SearchStatistics statistics = new SearchStatistics();
+
+    @Setter
+    private SearchListener searchListener;
+
+    @Override
+    public Move getMove(Player player, Collection<Move> moves, State state) {
+        if (searches == null) {
+            createSearches();
+        }
+        if (executor == null) {
+            executor = MiniMaxAgent.createExecutor(searches.length, "Lazy SMP search");
+        }
+
+        long start = System.nanoTime();
+        if (transpositionTable != null) {
+            transpositionTable.nextGeneration();
+        }
+
+        long deadline = search.createDeadline();
+        for (var worker : searches) {
+            worker.prepare(player, state, deadline);
+        }
+
+        var helpers = new ArrayList<Future<?>>(searches.length - 1);
+        for (int i = 1; i < searches.length; i++) {
+            var helper = searches[i];
+            var rootMoves = new ArrayList<>(moves);
+            Collections.rotate(rootMoves, -i);
+
+            int firstDepth = 1 + i % 2;
+            helpers.add(executor.submit(() -> search.iterate(helper, rootMoves, firstDepth, search.getDepthLimit(), 1, false)));
+        }
+
+        var main = executor.submit(() -> search.iterate(searches[0], new ArrayList<>(moves), 1, search.getDepthLimit(), 1, false));
+
+        MiniMaxAgent.RootResult result;
+        try {
+            result = main.get();
+        } catch (InterruptedException e) {
+            // the match was interrupted, unwind every thread and keep what the main search has completed
+            stopAll();
+            result = MiniMaxAgent.getUninterruptibly(main);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            stopAll();
+            throw new RuntimeException(e.getCause());
+        } finally {
+            stopAll();
+            for (var helper : helpers) {
+                MiniMaxAgent.getUninterruptibly(helper);
+            }
+        }
+
+        statistics = MiniMaxAgent.collectStatistics(searches, start);
+        if (searchListener != null) {
+            searchListener.onSearchFinished(statistics);
+        }
+
+        var bestMoves = result.bestMoves;
+        return search.getRandomAgent().getMove(player, bestMoves.isEmpty() ? moves : bestMoves, state);
+    }
+
+    /**
+     * Number of nodes visited by all threads during the last call to {@link #getMove(Player, Collection, State)}
+     */
+    public long getNodes() {
+        return statistics.getNodes();
+    }
+
+    @Override
+    public void onGameStart(Player player, State state) {
+        if (searches == null) return;
+
+        if (transpositionTable != null) {
+            transpositionTable.clear();
+        }
+        for (var worker : searches) {
+            worker.reset();
+        }
+    }
+
+    @Override
+    public void onGameEnd(Player winner) {
+        // the next search starts the threads again
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private void createSearches() {
+        if (search.getThreads() != 1 || search.isPondering()) {
+            throw new IllegalArgumentException("The search of Lazy SMP takes no threads or pondering of its own, "
+                    + "set its Threads to 1 and turn its Pondering off");
+        }
+
+        transpositionTable = search.createTranspositionTable();
+
+        searches = new MiniMaxSearch[getHelperThreads() + 1];
+        for (int i = 0; i < searches.length; i++) {
+            searches[i] = new MiniMaxSearch(search, transpositionTable);
+        }
+    }
+
+    private void stopAll() {
+        for (var worker : searches) {
+            worker.stop();
+        }
+    }
+
+}
@@ -0,0 +1,218 @@
+package net.rahka.chess.game.agent;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import net.rahka.chess.configuration.Configurable;
+import net.rahka.chess.configuration.ConfigurableBoolean;
+import net.rahka.chess.configuration.ConfigurableFloatingPoint;
+import net.rahka.chess.configuration.ConfigurableInt;
+import net.rahka.chess.game.Move;
+import net.rahka.chess.game.PackedMove;
+import net.rahka.chess.game.Player;
+import net.rahka.chess.game.State;
+import net.rahka.chess.game.agent.heuristics.Heuristic;
+import net.rahka.chess.game.agent.heuristics.RemainingPiecesHeuristic;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Monte Carlo tree search with UCT. Every iteration walks down the tree to a leaf, plays the game out from there with
+ * random moves and adds the result to every node on the way. The move that was visited most often is played. With
+ * more than one thread all of them search the same tree, and a thread that is below a node counts as a virtual loss
+ * there until its result comes in.
+ * <p>
+ * The tree is kept from one move to the next: the subtree of the moves that were actually played becomes the root of
+ * the next search, until the tree is half full and starts over.
+ */
+@Configurable(name = "MCTS")
+@RequiredArgsConstructor
+public class MctsAgent implements Agent {
+
+    /**
+     * Iterations per move of all threads together
+     */
+    @Getter @ConfigurableInt(name = "Iterations", min = 1, def = 20000)
+    final int iterationLimit;
+
+    /**
+     * Time per move in milliseconds, the search stops when this or the iterations run out. A budget of 0 means there
+     * is no time limit.
+     */
+    @Getter @ConfigurableInt(name = "Time budget (ms)", min = 0, def = 0)
+    final int timeBudget;
+
+    /**
+     * Weight of the UCT exploration term against the average reward of a node. Chess wants far less than the textbook
+     * value, a single refutation among dozens of replies has to get most of the visits quickly.
+     */
+    @Getter @ConfigurableFloatingPoint(name = "Exploration", min = 0, def = 0.15)
+    final double exploration;
+
+    /**
+     * Plies after which a playout is stopped and scored by the heuristic
+     */
+    @Getter @ConfigurableInt(name = "Playout depth", min = 0, max = 1000, def = 4)
+    final int playoutDepth;
+
+    /**
+     * Plays a random capture in a playout whenever there is one, instead of a random move
+     */
+    @Getter @ConfigurableBoolean(name = "Capture playouts", def = true)
+    final boolean capturePlayouts;
+
+    /**
+     * Heuristic value in pawns at which a playout that was cut short counts as about three quarters of a win
+     */
+    @Getter @ConfigurableFloatingPoint(name = "Evaluation scale", min = 0.001, def = 2)
+    final double evaluationScale;
+
+    @Getter @ConfigurableInt(name = "Threads", min = 1, max = 256, def = 1)
+    final int threads;
+
+    @Getter @ConfigurableInt(name = "Virtual loss", min = 0, max = 100, def = 3)
+    final int virtualLoss;
+
+    @Getter @ConfigurableInt(name = "Tree size (MB)", min = 1, max = 16384, def = 64)
+    final int treeSize;
+
+    @Getter @Configurable(name = "Heuristic", def = RemainingPiecesHeuristic.class)
+    final Heuristic heuristic;
+
+    @Configurable(name = "Random")
+    final Random random;
+
+    private MctsTree tree;
+
+    private MctsSearch[] searches;
+
+    private ExecutorService executor;
+
+    /**
+     * The position at the root of the tree, or null if the tree does not match the game anymore
+     */
+    private State treeState;
+
+    /**
+     * Number of iterations of all threads during the last call to {@link #getMove(Player, Collection, State)}
+     */
+    @Getter
+    private int iterations;
+
+    @Override
+    public Move getMove(Player player, Collection<Move> moves, State state) {
+        if (searches == null) {
+            createSearches();
+        }
+        if (searches.length > 1 && executor == null) {
+            executor = MiniMaxAgent.createExecutor(searches.length - 1, "MCTS search");
+        }
+
+        if (!state.equals(treeState) || tree.size() > tree.capacity() / 2) {
+            tree.clear();
+        }
+        treeState = state;
+
+        long deadline = (getTimeBudget() > 0) ? System.nanoTime() + getTimeBudget() * 1_000_000L : Long.MAX_VALUE;
+        var budget = new AtomicInteger(getIterationLimit());
+        for (var search : searches) {
+            search.prepare(player, state, random.nextLong(), deadline, budget);
+        }
+
+        var helpers = new ArrayList<Future<?>>(searches.length - 1);
+        for (int i = 1; i < searches.length; i++) {
+            helpers.add(executor.submit(searches[i]::run));
+        }
+
+        try {
+            searches[0].run();
+        } finally {
+            for (var search : searches) {
+                search.stop();
+            }
+            for (var helper : helpers) {
+                MiniMaxAgent.getUninterruptibly(helper);
+            }
+        }
+
+        iterations = 0;
+        for (var search : searches) {
+            iterations += search.getIterations();
+        }
+
+        int best = bestChild();
+        if (best == 0) {
+            // not even the root has been expanded
+            List<Move> list = new ArrayList<>(moves);
+            return list.get(random.nextInt(list.size()));
+        }
+        return PackedMove.toMove(tree.move(best));
+    }
+
+    @Override
+    public void onGameStart(Player player, State state) {
+        treeState = null;
+    }
+
+    @Override
+    public void onMovePlayed(Player player, Move move, State state) {
+        if (treeState == null) return;
+
+        int root = tree.root();
+        int first = tree.firstChild(root);
+        if (first > 0) {
+            for (int child = first; child < first + tree.childCount(root); child++) {
+                if (PackedMove.toMove(tree.move(child)).equals(move)) {
+                    tree.setRoot(child);
+                    treeState = state;
+                    return;
+                }
+            }
+        }
+        treeState = null;
+    }
+
+    @Override
+    public void onGameEnd(Player winner) {
+        // the next search starts the threads again
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * @return the most visited child of the root, the better average breaks ties, or 0 if the root has no children
+     */
+    private int bestChild() {
+        int root = tree.root();
+        int first = tree.firstChild(root);
+        if (first < 1) return 0;
+
+        int best = first;
+        for (int child = first + 1; child < first + tree.childCount(root); child++) {
+            int visits = tree.visits(child), bestVisits = tree.visits(best);
+            if (visits > bestVisits || (visits == bestVisits && visits > 0
+                    && tree.reward(child) * bestVisits > tree.reward(best) * visits)) {
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    private void createSearches() {
+        long capacity = Math.multiplyFull(getTreeSize(), 1 << 20) / MctsTree.NODE_BYTES;
+        tree = new MctsTree((int) Math.min(capacity, Integer.MAX_VALUE - 8));
+
+        searches = new MctsSearch[getThreads()];
+        for (int i = 0; i < searches.length; i++) {
+            searches[i] = new MctsSearch(this, tree);
+        }
+    }
+
+}
@@ -0,0 +1,228 @@
+package net.rahka.chess.game.agent;
+
+import lombok.Getter;
+import net.rahka.chess.game.Board;
+import net.rahka.chess.game.MoveList;
+import net.rahka.chess.game.PackedMove;
+import net.rahka.chess.game.Piece;
+import net.rahka.chess.game.Player;
+import net.rahka.chess.game.State;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single thread of a {@link MctsAgent}: it walks the shared tree down by UCT, expands the leaf it reaches and plays
+ * the game out from there on its own board. Every result is stored for the player who made the move of a node, so
+ * that both players pick the child that is best for themselves.
+ */
+class MctsSearch {
+
+    private final MctsAgent agent;
+
+    private final MctsTree tree;
+
+    private final MoveList moves = new MoveList(140);
+
+    private int[] path = new int[64];
+
+    private Player player;
+
+    private Board board;
+
+    /**
+     * The evaluation scale of the agent in the units of its heuristic
+     */
+    private double evaluationScale;
+
+    private SplittableRandom random;
+
+    private long deadline;
+
+    private AtomicInteger budget;
+
+    /**
+     * The thread that asked for the move, the search stops once it is {@link MiniMaxSearch#isGone(Thread) gone}
+     */
+    private Thread owner;
+
+    private volatile boolean stopped;
+
+    @Getter
+    private int iterations;
+
+    MctsSearch(MctsAgent agent, MctsTree tree) {
+        this.agent = agent;
+        this.tree = tree;
+    }
+
+    /**
+     * Sets up the search of a new root position, must be called by the thread that asks for the move
+     *
+     * @param budget the iterations left to all threads together
+     */
+    void prepare(Player player, State state, long seed, long deadline, AtomicInteger budget) {
+        this.owner = Thread.currentThread();
+        this.player = player;
+        this.board = state.createBoard();
+        this.random = new SplittableRandom(seed);
+        this.deadline = deadline;
+        this.budget = budget;
+        this.iterations = 0;
+
+        board.setHeuristic(agent.getHeuristic());
+        this.evaluationScale = agent.getEvaluationScale() * agent.getHeuristic().pawnValue();
+        this.stopped = false;
+    }
+
+    /**
+     * Makes the search return after its current iteration, it can be called from any thread
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Runs iterations until the budget or the time is used up, or the search is stopped
+     */
+    void run() {
+        while (!stopped && !MiniMaxSearch.isGone(owner) && System.nanoTime() < deadline && budget.getAndDecrement() > 0) {
+            iterate();
+            iterations++;
+        }
+    }
+
+    private void iterate() {
+        int virtualLoss = agent.getVirtualLoss();
+
+        int node = tree.root();
+        int length = 0;
+        path[length++] = node;
+        tree.addVirtualLoss(node, virtualLoss);
+
+        var side = player;
+        while (!board.isTerminal()) {
+            if (tree.firstChild(node) < 1) {
+                // a leaf is played out on its first visit and only grows children on the next one
+                if (tree.visits(node) <= virtualLoss) break;
+
+                generateMoves(side);
+                if (!tree.expand(node, moves)) break;
+            }
+
+            node = select(node);
+            tree.addVirtualLoss(node, virtualLoss);
+            if (length == path.length) {
+                path = Arrays.copyOf(path, length * 2);
+            }
+            path[length++] = node;
+
+            board.makeMove(tree.move(node));
+            side = side.not();
+        }
+
+        double result = playout(side);
+
+        for (int i = length - 1; i >= 0; i--) {
+            if (i > 0) board.unmakeMove();
+
+            // the moves on odd plies are the root player's
+            double reward = (i % 2 == 1) ? result : 1 - result;
+            tree.update(path[i], (int) Math.round(reward * MctsTree.REWARD_SCALE), virtualLoss);
+        }
+    }
+
+    /**
+     * @return the child with the best upper confidence bound, unvisited children first
+     */
+    private int select(int node) {
+        int first = tree.firstChild(node);
+        int count = tree.childCount(node);
+        double logVisits = Math.log(Math.max(tree.visits(node), 1));
+
+        int best = first;
+        double bestBound = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < first + count; child++) {
+            int visits = tree.visits(child);
+            if (visits == 0) return child;
+
+            double bound = (double) tree.reward(child) / ((long) visits * MctsTree.REWARD_SCALE)
+                    + agent.getExploration() * Math.sqrt(logVisits / visits);
+            if (bound > bestBound) {
+                bestBound = bound;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Plays random moves until a king falls or the playout depth is reached. A king is always taken when it can be,
+     * and with capture playouts so is any other piece.
+     *
+     * @return the result for the root player, 1 for a win and 0 for a loss
+     */
+    private double playout(Player side) {
+        int plies = 0;
+        while (plies < agent.getPlayoutDepth() && !board.isTerminal()) {
+            moves.clear();
+            board.generateMoves(side, moves, Board.CAPTURES);
+            if (!isKingCapture() && (!agent.isCapturePlayouts() || moves.isEmpty())) {
+                board.generateMoves(side, moves, Board.QUIETS);
+            }
+            if (moves.isEmpty()) break;
+
+            board.makeMove(moves.get(random.nextInt(moves.size())));
+            side = side.not();
+            plies++;
+        }
+
+        double result = evaluate();
+        for (int i = 0; i < plies; i++) {
+            board.unmakeMove();
+        }
+        return result;
+    }
+
+    /**
+     * Generates the moves of a node, which is only the capture of the king if there is one. Searching anything else
+     * would only water down the value of the node.
+     */
+    private void generateMoves(Player side) {
+        moves.clear();
+        board.generateMoves(side, moves, Board.CAPTURES);
+        if (!isKingCapture()) {
+            board.generateMoves(side, moves, Board.QUIETS);
+        }
+    }
+
+    /**
+     * Leaves the capture of the king as the only move if it is among the generated moves
+     *
+     * @return true if the king can be taken
+     */
+    private boolean isKingCapture() {
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            var victim = PackedMove.victim(move);
+            if (victim == Piece.WHITE_KING || victim == Piece.BLACK_KING) {
+                moves.clear();
+                moves.add(move);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private double evaluate() {
+        if (board.getBoard(Piece.WHITE_KING) == 0) return player.isWhite() ? 0 : 1;
+        if (board.getBoard(Piece.BLACK_KING) == 0) return player.isWhite() ? 1 : 0;
+        if (board.getAllPieces() == (board.getBoard(Piece.WHITE_KING) | board.getBoard(Piece.BLACK_KING))) return 0.5;
+
+        // a playout that is cut short is scored by how far the heuristic leans to either side
+        int value = board.evaluate(player);
+        return 1 / (1 + Math.exp(-value / evaluationScale));
+    }
+
+}
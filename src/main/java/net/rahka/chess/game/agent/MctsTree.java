@@ -0,0 +1,177 @@
+package net.rahka.chess.game.agent;
+
+import net.rahka.chess.game.MoveList;
+import net.rahka.chess.game.PackedMove;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The nodes of a Monte Carlo search tree in flat arrays, node 0 is the root of a fresh tree. The children of a node
+ * are stored next to each other, so a node only needs its move, its first child and the number of children. Visits and
+ * rewards are updated atomically and a node is expanded by the one thread that claims it, so any number of threads can
+ * search the same tree without locks.
+ * <p>
+ * Any node can be made the root to search on below it. The nodes outside its subtree stay where they are until the
+ * tree is cleared.
+ */
+class MctsTree {
+
+    /**
+     * Move, child count, first child, visits and reward
+     */
+    static final int NODE_BYTES = 4 + 2 + 4 + 4 + 8;
+
+    /**
+     * Rewards are stored in fixed point, a win is worth this much
+     */
+    static final int REWARD_SCALE = 1 << 16;
+
+    private static final int UNEXPANDED = 0;
+
+    private static final int EXPANDING = -1;
+
+    private final int capacity;
+
+    private final int[] moves;
+
+    private final short[] childCounts;
+
+    /**
+     * The index of the first child, which is never the root, or {@link #UNEXPANDED} or {@link #EXPANDING}. Setting it
+     * publishes the children to the other threads.
+     */
+    private final AtomicIntegerArray firstChildren;
+
+    /**
+     * Finished visits plus the virtual losses of the threads that are below the node right now
+     */
+    private final AtomicIntegerArray visits;
+
+    /**
+     * Sum of the rewards for the player who made the move of the node
+     */
+    private final AtomicLongArray rewards;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private int root;
+
+    MctsTree(int capacity) {
+        this.capacity = capacity;
+        this.moves = new int[capacity];
+        this.childCounts = new short[capacity];
+        this.firstChildren = new AtomicIntegerArray(capacity);
+        this.visits = new AtomicIntegerArray(capacity);
+        this.rewards = new AtomicLongArray(capacity);
+
+        clear();
+    }
+
+    /**
+     * Forgets every node but a fresh root, the other slots are overwritten when they are used again
+     */
+    void clear() {
+        moves[0] = PackedMove.NONE;
+        childCounts[0] = 0;
+        firstChildren.set(0, UNEXPANDED);
+        visits.set(0, 0);
+        rewards.set(0, 0);
+        size.set(1);
+        root = 0;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int root() {
+        return root;
+    }
+
+    /**
+     * Must not be called while the tree is being searched
+     */
+    void setRoot(int node) {
+        root = node;
+    }
+
+    int move(int node) {
+        return moves[node];
+    }
+
+    /**
+     * @return the index of the first child, or a value below 1 if the node has not been expanded yet
+     */
+    int firstChild(int node) {
+        return firstChildren.get(node);
+    }
+
+    /**
+     * Only valid once {@link #firstChild(int)} has returned a child
+     */
+    int childCount(int node) {
+        return childCounts[node];
+    }
+
+    int visits(int node) {
+        return visits.get(node);
+    }
+
+    long reward(int node) {
+        return rewards.get(node);
+    }
+
+    /**
+     * Adds a child for every move to a node that has none yet
+     *
+     * @return false if another thread is expanding the node, the tree is full or there are no moves
+     */
+    boolean expand(int node, MoveList children) {
+        int count = children.size();
+        if (count == 0 || !firstChildren.compareAndSet(node, UNEXPANDED, EXPANDING)) return false;
+
+        int first;
+        do {
+            first = size.get();
+            if (first > capacity - count) {
+                firstChildren.set(node, UNEXPANDED);
+                return false;
+            }
+        } while (!size.compareAndSet(first, first + count));
+
+        for (int i = 0; i < count; i++) {
+            int child = first + i;
+            moves[child] = children.get(i);
+            childCounts[child] = 0;
+            visits.set(child, 0);
+            rewards.set(child, 0);
+            firstChildren.set(child, UNEXPANDED);
+        }
+
+        childCounts[node] = (short) count;
+        firstChildren.set(node, first);
+        return true;
+    }
+
+    /**
+     * Counts a visit that has not finished yet as that many losses, which steers other threads to other nodes
+     */
+    void addVirtualLoss(int node, int virtualLoss) {
+        visits.addAndGet(node, virtualLoss);
+    }
+
+    /**
+     * Replaces the virtual loss of a finished visit with its reward
+     */
+    void update(int node, int reward, int virtualLoss) {
+        rewards.addAndGet(node, reward);
+        visits.addAndGet(node, 1 - virtualLoss);
+    }
+
+}
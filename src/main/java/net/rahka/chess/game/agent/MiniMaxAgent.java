@@ -2,40 +2,672 @@ package net.rahka.chess.game.agent;
 
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import net.rahka.chess.game.agent.heuristics.Heuristic;
 import net.rahka.chess.game.agent.heuristics.RemainingPiecesHeuristic;
 import net.rahka.chess.configuration.Configurable;
+import net.rahka.chess.configuration.ConfigurableBoolean;
 import net.rahka.chess.configuration.ConfigurableInt;
+import net.rahka.chess.game.Board;
 import net.rahka.chess.game.Move;
+import net.rahka.chess.game.PackedMove;
 import net.rahka.chess.game.Player;
 import net.rahka.chess.game.State;
+import net.rahka.chess.game.agent.search.DepthPreferredReplacement;
+import net.rahka.chess.game.agent.search.ReplacementScheme;
+import net.rahka.chess.game.agent.search.TranspositionTable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Configurable(name = "MiniMax")
 @RequiredArgsConstructor
 public class MiniMaxAgent implements Agent {
 
+    private static final int INFINITY = MiniMaxSearch.INFINITY;
+
     @Getter @ConfigurableInt(name = "Depth limit", min = 1, def = 3)
     final int depthLimit;
 
+    /**
+     * Time per move in milliseconds, the search deepens until this runs out or the depth limit is reached. A budget
+     * of 0 means there is no time limit.
+     */
+    @Getter @ConfigurableInt(name = "Time budget (ms)", min = 0, def = 0)
+    final int timeBudget;
+
+    /**
+     * Maximum number of captures a quiescence search follows past the depth limit, 0 evaluates the leaves as they are
+     */
+    @Getter @ConfigurableInt(name = "Quiescence depth", min = 0, max = 32, def = 4)
+    final int quiescenceDepth;
+
+    /**
+     * Half width of the root window around the score of the previous iteration in pawns, 0 always searches the full
+     * window
+     */
+    @Getter @ConfigurableInt(name = "Aspiration window", min = 0, def = 1)
+    final int aspirationWindow;
+
+    /**
+     * Lets the side to move pass at null window nodes, if a reduced search still fails high the node is cut off. It
+     * is skipped when the side has nothing but pawns and its king, where passing may well be better than any move.
+     */
+    @Getter @ConfigurableBoolean(name = "Null move pruning")
+    final boolean nullMovePruning;
+
+    @Getter @ConfigurableInt(name = "Null move reduction", min = 1, max = 6, def = 2)
+    final int nullMoveReduction;
+
+    /**
+     * Searches quiet moves that are ordered late with reduced depth, and only at full depth if they raise alpha
+     */
+    @Getter @ConfigurableBoolean(name = "Late move reductions")
+    final boolean lateMoveReductions;
+
+    @Getter @ConfigurableInt(name = "LMR move threshold", min = 1, def = 4)
+    final int lateMoveThreshold;
+
+    @Getter @ConfigurableInt(name = "LMR min depth", min = 2, def = 3)
+    final int lateMoveMinDepth;
+
+    @Getter @ConfigurableInt(name = "LMR reduction", min = 1, max = 6, def = 1)
+    final int lateMoveReduction;
+
+    /**
+     * Number of threads that search root moves in parallel, each with its own search stack
+     */
+    @Getter @ConfigurableInt(name = "Threads", min = 1, max = 256, def = 1)
+    final int threads;
+
+    /**
+     * Keeps searching on the opponent's time, from the position after the reply the search expects. If the opponent
+     * plays that reply the search goes on with its results and transposition table, otherwise they are thrown away.
+     * Pondering needs the transposition table to predict the reply.
+     */
+    @Getter @ConfigurableBoolean(name = "Pondering", def = false)
+    final boolean pondering;
+
+    @Getter @ConfigurableInt(name = "TT size (MB)", min = 0, max = 4096, def = 16)
+    final int transpositionTableSize;
+
+    @Getter @Configurable(name = "TT replacement", def = DepthPreferredReplacement.class)
+    final ReplacementScheme replacementScheme;
+
+    @Getter @ConfigurableBoolean(name = "MVV-LVA")
+    final boolean mvvLva;
+
+    @Getter @ConfigurableBoolean(name = "Killer moves")
+    final boolean killerMoves;
+
+    @Getter @ConfigurableBoolean(name = "History heuristic")
+    final boolean historyHeuristic;
+
     @Getter @Configurable(name = "Heuristic", def = RemainingPiecesHeuristic.class)
     final Heuristic heuristic;
 
     @Getter
     final RandomAgent randomAgent;
 
+    private TranspositionTable transpositionTable;
+
+    private MiniMaxSearch[] searches;
+
+    private ForkJoinPool pool;
+
+    private BlockingQueue<MiniMaxSearch> idleSearches;
+
+    /**
+     * Statistics of the last search of all threads together
+     */
+    @Getter
+    private SearchStatistics statistics = new SearchStatistics();
+
+    @Setter
+    private SearchListener searchListener;
+
+    private ExecutorService ponderExecutor;
+
+    private State ponderState;
+
+    /**
+     * The player whose reply is being pondered on
+     */
+    private Player ponderPlayer;
+
+    private long ponderStart;
+
+    private Future<RootResult> ponderResult;
+
     @Override
     public Move getMove(Player player, Collection<Move> moves, State state) {
-        List<Move> bestMoves = new ArrayList<>(30);
+        prepareSearches();
+
+        var result = (ponderResult != null) ? finishPondering(state) : null;
+        if (result == null) {
+            result = search(player, moves, state, 1);
+        }
+
+        var bestMoves = result.bestMoves;
+        var move = randomAgent.getMove(player, bestMoves.isEmpty() ? moves : bestMoves, state);
+        if (isPondering() && transpositionTable != null && !Thread.currentThread().isInterrupted()) {
+            startPondering(player, state, move);
+        }
+        return move;
+    }
+
+    /**
+     * Searches a position just like {@link #getMove(Player, Collection, State)} does, but reports the best root moves
+     * instead of picking one. Moves outside the top lines are only searched far enough to rule them out.
+     *
+     * @param lines the number of root moves to report
+     * @return up to lines root moves from best to worst, each with its score and principal variation
+     */
+    public List<PrincipalVariation> analyze(Player player, State state, int lines) {
+        if (lines < 1) throw new IllegalArgumentException("Cannot analyze " + lines + " lines");
+
+        prepareSearches();
+
+        // whatever the pondering was expecting, it is not this search
+        stopPondering();
+
+        var result = search(player, state.getMoves(player), state, lines);
+
+        var variations = new ArrayList<PrincipalVariation>(lines);
+        for (var move : result.leaders().subList(0, Math.min(lines, result.leaders().size()))) {
+            variations.add(new PrincipalVariation(move, result.value(move), result.depth, principalVariation(player, state, move, result.depth)));
+        }
+        return variations;
+    }
+
+    private RootResult search(Player player, Collection<Move> moves, State state, int lines) {
+        long start = System.nanoTime();
+        if (transpositionTable != null) {
+            transpositionTable.nextGeneration();
+        }
+
+        long deadline = createDeadline();
+        for (var search : searches) {
+            search.prepare(player, state, deadline);
+        }
+
+        var result = iterate(searches[0], new ArrayList<>(moves), 1, getDepthLimit(), lines, pool != null);
+        finishStatistics(start);
+
+        return result;
+    }
+
+    /**
+     * Follows the hash moves from the position after a root move for as deep as the search went, which is depth plies
+     * below the root move. The line ends at the first position that it has passed before.
+     */
+    private List<Move> principalVariation(Player player, State state, Move move, int depth) {
+        var line = new ArrayList<Move>(depth + 1);
+        line.add(move);
+
+        var board = state.createBoard();
+        board.makeMove(board.encode(move));
+
+        var visited = new HashSet<Long>();
+        visited.add(board.getHash());
+
+        var side = player.not();
+        for (int ply = 1; ply <= depth && !board.isTerminal(); ply++) {
+            int next = hashMove(board, side);
+            if (next == PackedMove.NONE) break;
+
+            line.add(PackedMove.toMove(next));
+            board.makeMove(next);
+            side = side.not();
+
+            // the hash moves of a repetition go round in circles
+            if (!visited.add(board.getHash())) break;
+        }
+        return line;
+    }
+
+    /**
+     * @return the move the transposition table holds for the side to move, or {@link PackedMove#NONE} if there is
+     * none that can be played in this position
+     */
+    private int hashMove(Board board, Player side) {
+        if (transpositionTable == null) return PackedMove.NONE;
+
+        long entry = transpositionTable.probe(board.getHash());
+        int move = (entry != 0) ? TranspositionTable.move(entry) : PackedMove.NONE;
+        if (move == PackedMove.NONE || PackedMove.piece(move).isWhite() != side.isWhite() || !board.isPseudoLegal(move)) {
+            return PackedMove.NONE;
+        }
+        return move;
+    }
+
+    /**
+     * Predicts the reply to a move from the transposition table and starts searching the position after it
+     */
+    private void startPondering(Player player, State state, Move move) {
+        var board = state.createBoard();
+        board.makeMove(board.encode(move));
+        if (board.isTerminal()) return;
+
+        int reply = hashMove(board, player.not());
+        if (reply == PackedMove.NONE) return;
+
+        board.makeMove(reply);
+        if (board.isTerminal()) return;
+
+        var expected = board.createState();
+        var rootMoves = new ArrayList<>(expected.getMoves(player));
+        if (rootMoves.isEmpty()) return;
+
+        if (ponderExecutor == null) {
+            ponderExecutor = createExecutor(1, "MiniMax ponder");
+        }
+
+        // a ponder hit plays from these entries, so they belong to a new search and not to the last move's
+        transpositionTable.nextGeneration();
+
+        // prepared on this thread, so that interrupting the match also stops the pondering
+        for (var search : searches) {
+            search.prepare(player, expected, Long.MAX_VALUE);
+        }
+
+        ponderState = expected;
+        ponderPlayer = player;
+        ponderStart = System.nanoTime();
+        ponderResult = ponderExecutor.submit(() -> iterate(searches[0], rootMoves, 1, getDepthLimit(), 1, pool != null));
+    }
+
+    /**
+     * Ends the pondering that was started after the last move
+     *
+     * @return the result of the pondering search if the opponent played the expected reply, null otherwise
+     */
+    private RootResult finishPondering(State state) {
+        var result = ponderResult;
+        boolean hit = ponderState.equals(state);
+        ponderResult = null;
+        ponderState = null;
+
+        if (!hit) {
+            stop();
+            getUninterruptibly(result);
+            return null;
+        }
+
+        // the clock starts now, the time spent pondering was free
+        long deadline = createDeadline();
+        for (var search : searches) {
+            search.setDeadline(deadline);
+        }
+
+        RootResult pondered;
+        try {
+            pondered = result.get();
+        } catch (InterruptedException e) {
+            stop();
+            pondered = getUninterruptibly(result);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+
+        finishStatistics(ponderStart);
+
+        return pondered;
+    }
+
+    /**
+     * Number of nodes visited by the last call to {@link #getMove(Player, Collection, State)}
+     */
+    public long getNodes() {
+        return statistics.getNodes();
+    }
+
+    private void stopPondering() {
+        if (ponderResult != null) {
+            finishPondering(null);
+        }
+    }
+
+    @Override
+    public void onGameStart(Player player, State state) {
+        stopPondering();
+        if (searches == null) return;
+
+        // nothing learned in another game applies to this one
+        if (transpositionTable != null) {
+            transpositionTable.clear();
+        }
+        for (var search : searches) {
+            search.reset();
+        }
+    }
+
+    @Override
+    public void onMovePlayed(Player player, Move move, State state) {
+        // the pondering is wasted as soon as the opponent plays anything else, no need to wait for the next turn
+        if (ponderResult != null && player != ponderPlayer && !state.equals(ponderState)) {
+            finishPondering(null);
+        }
+    }
+
+    @Override
+    public void onGameEnd(Player winner) {
+        stopPondering();
+
+        // the next search starts the threads again
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        if (ponderExecutor != null) {
+            ponderExecutor.shutdown();
+            ponderExecutor = null;
+        }
+    }
+
+    private void finishStatistics(long start) {
+        statistics = collectStatistics(searches, start);
+        if (searchListener != null) {
+            searchListener.onSearchFinished(statistics);
+        }
+    }
+
+    /**
+     * Adds up the statistics of the threads of a search that started at the given {@link System#nanoTime()}, the
+     * iterations are those of the first thread
+     */
+    static SearchStatistics collectStatistics(MiniMaxSearch[] searches, long start) {
+        var statistics = new SearchStatistics();
+        statistics.add(searches[0].getStatistics());
+        for (int i = 1; i < searches.length; i++) {
+            statistics.addCounters(searches[i].getStatistics());
+        }
+        statistics.nanos = System.nanoTime() - start;
+        return statistics;
+    }
+
+    /**
+     * Creates the searches on first use, and the thread pool again after {@link #onGameEnd(Player)} has shut it down
+     */
+    private void prepareSearches() {
+        if (searches == null) {
+            createSearches();
+        }
+        if (searches.length > 1 && pool == null) {
+            pool = createPool(searches.length);
+        }
+    }
+
+    private void createSearches() {
+        transpositionTable = createTranspositionTable();
+
+        searches = new MiniMaxSearch[getThreads()];
+        for (int i = 0; i < searches.length; i++) {
+            searches[i] = new MiniMaxSearch(this, transpositionTable);
+        }
+
+        if (searches.length > 1) {
+            idleSearches = new ArrayBlockingQueue<>(searches.length, false, Arrays.asList(searches));
+        }
+    }
+
+    /**
+     * @return a transposition table of the configured size, or null if it is disabled
+     */
+    TranspositionTable createTranspositionTable() {
+        return (getTranspositionTableSize() > 0) ? new TranspositionTable(getTranspositionTableSize(), getReplacementScheme()) : null;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which a search that starts now runs out of time
+     */
+    long createDeadline() {
+        return (getTimeBudget() > 0) ? System.nanoTime() + getTimeBudget() * 1_000_000L : Long.MAX_VALUE;
+    }
+
+    /**
+     * Iterative deepening over the root moves, which are reordered in place so that the best moves of an iteration
+     * are searched first in the next one
+     *
+     * @param lines the number of root moves that get an exact value, the others are only known to be worse
+     * @param parallel whether the brothers of the first root move are searched by this agent's thread pool
+     * @return the result of the last completed iteration
+     */
+    RootResult iterate(MiniMaxSearch search, List<Move> rootMoves, int firstDepth, int lastDepth, int lines, boolean parallel) {
+        var result = new RootResult(0, lines);
+        long previousNodes = 0;
+        for (int depth = firstDepth; depth <= lastDepth; depth++) {
+            // below the best line the aspiration window would leave nothing but bounds
+            var iteration = (depth == firstDepth || getAspirationWindow() == 0 || lines > 1)
+                    ? searchRoot(search, rootMoves, depth, -INFINITY, INFINITY, lines, parallel)
+                    : aspirationSearch(search, rootMoves, depth, result.bestValue, parallel);
+            if (isAborted(search, parallel)) break;
+
+            long nodes = parallel ? countNodes() : search.getNodes();
+            search.getStatistics().iterationFinished(depth, nodes - previousNodes);
+            previousNodes = nodes;
+
+            // parallel threads add their moves in any order, which would make the random pick between ties random too
+            iteration.sort(rootMoves);
+            result = iteration;
+
+            var leaders = result.leaders();
+            rootMoves.removeAll(leaders);
+            rootMoves.addAll(0, leaders);
+        }
+
+        return result;
+    }
+
+    private long countNodes() {
+        long nodes = 0;
+        for (var search : searches) {
+            nodes += search.getNodes();
+        }
+        return nodes;
+    }
+
+    private void stop() {
+        for (var search : searches) {
+            search.stop();
+        }
+    }
+
+    private boolean isAborted(MiniMaxSearch search, boolean parallel) {
+        if (!parallel) return search.isAborted();
+
+        for (var other : searches) {
+            if (other.isAborted()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Creates a pool of daemon threads that end after a minute without work, so that even an agent that never sees
+     * the end of a game does not keep them
+     */
+    private static ForkJoinPool createPool(int threads) {
+        return new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, false,
+                0, Short.MAX_VALUE, 1, null, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Creates a pool of daemon threads that end after a minute without work, for the same reason as
+     * {@link #createPool(int)}
+     */
+    static ExecutorService createExecutor(int threads, String name) {
+        var executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), (runnable) -> {
+            var thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Waits for a stopped search to unwind, an interrupt in the meantime is kept for the caller
+     */
+    static <T> T getUninterruptibly(Future<T> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Searches the root in a narrow window around the expected value, and widens the failing side of the window until
+     * the value falls inside
+     */
+    private RootResult aspirationSearch(MiniMaxSearch search, List<Move> moves, int depth, int guess, boolean parallel) {
+        long delta = Math.multiplyFull(getAspirationWindow(), getHeuristic().pawnValue());
+        int alpha = (int) Math.max((long) guess - delta, -INFINITY);
+        int beta = (int) Math.min((long) guess + delta, INFINITY);
+
+        while (true) {
+            var result = searchRoot(search, moves, depth, alpha, beta, 1, parallel);
+            if (isAborted(search, parallel) || (result.bestValue > alpha && result.bestValue < beta)
+                    || (alpha == -INFINITY && beta == INFINITY)) {
+                return result;
+            }
+
+            delta *= 2;
+            if (result.bestValue <= alpha) {
+                alpha = (int) Math.max((long) guess - delta, -INFINITY);
+            } else {
+                beta = (int) Math.min((long) guess + delta, INFINITY);
+            }
+        }
+    }
+
+    /**
+     * Searches every root move to the given depth. The first move gets the full window and sets the bar for its
+     * brothers, which are searched on the thread pool in parallel mode.
+     */
+    private RootResult searchRoot(MiniMaxSearch first, List<Move> moves, int depth, int alpha, int beta, int lines, boolean parallel) {
+        var result = new RootResult(depth, lines);
+        if (moves.isEmpty()) return result;
+
+        int value = first.searchRootMove(moves.get(0), depth, alpha, beta);
+        if (first.isAborted()) return result;
+
+        result.add(moves.get(0), value);
+        if (result.isCutoff(beta)) return result;
+
+        var brothers = moves.subList(1, moves.size());
+        if (!parallel) {
+            for (Move move : brothers) {
+                searchBrother(first, result, move, depth, alpha, beta);
+                if (first.isAborted() || result.isCutoff(beta)) break;
+            }
+            return result;
+        }
+
+        var tasks = new ArrayList<Future<Void>>(brothers.size());
+        for (Move move : brothers) {
+            tasks.add(pool.submit(() -> {
+                var search = idleSearches.take();
+                try {
+                    if (!search.isAborted() && !result.isCutoff(beta)) {
+                        searchBrother(search, result, move, depth, alpha, beta);
+                    }
+                } finally {
+                    idleSearches.put(search);
+                }
+                return null;
+            }));
+        }
+
+        if (searchListener != null) {
+            searchListener.onRootSplit(depth);
+        }
+
+        try {
+            for (var task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            // the workers cannot see an interrupt of this thread, only their stop flags
+            stop();
+            for (var task : tasks) {
+                getUninterruptibly(task);
+            }
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            stop();
+            throw new RuntimeException(e.getCause());
+        }
+
+        return result;
+    }
+
+    /**
+     * Searches a root move in a window just around the value of the last line so far, which is enough to tell ties
+     * from better and worse moves. Only a move that turns out better is searched again with a window up to beta.
+     */
+    private void searchBrother(MiniMaxSearch search, RootResult result, Move move, int depth, int alpha, int beta) {
+        int floor = result.floor(alpha);
+        int value = search.searchRootMove(move, depth, floor - 1, floor + 1);
+        if (value > floor && value < beta) {
+            // other threads may have raised the floor in the meantime
+            floor = result.floor(alpha);
+            value = search.searchRootMove(move, depth, floor - 1, beta);
+        }
+
+        if (!search.isAborted()) {
+            result.add(move, value);
+        }
+    }
+
+    /**
+     * The root moves of a search ordered by their values, shared by every thread that searches root moves. The values
+     * of the first lines moves and of the moves that tie with them are exact, the others are upper bounds.
+     */
+    static class RootResult {
+
+        final int depth;
+
+        final int lines;
+
+        final List<Move> bestMoves = new ArrayList<>(30);
+
         int bestValue = Integer.MIN_VALUE;
 
-        for (Move move : moves) {
-            var expanded = state.expand(move);
-            int value = min(player, expanded, Integer.MIN_VALUE, Integer.MAX_VALUE, 0);
+        private final List<Move> moves = new ArrayList<>(30);
+
+        private int[] values = new int[30];
+
+        RootResult(int depth, int lines) {
+            this.depth = depth;
+            this.lines = lines;
+        }
 
+        synchronized void add(Move move, int value) {
             if (value > bestValue) {
                 bestMoves.clear();
                 bestMoves.add(move);
@@ -43,39 +675,59 @@ public class MiniMaxAgent implements Agent {
             } else if (value == bestValue) {
                 bestMoves.add(move);
             }
+
+            int index = moves.size();
+            if (index == values.length) {
+                values = Arrays.copyOf(values, index * 2);
+            }
+            for (; index > 0 && values[index - 1] < value; index--) {
+                values[index] = values[index - 1];
+            }
+            values[index] = value;
+            moves.add(index, move);
         }
 
-        if (bestMoves.isEmpty()) {
-            return randomAgent.getMove(player, moves, state);
+        /**
+         * @return the value a move has to reach to make it into the lines
+         */
+        synchronized int floor(int alpha) {
+            return (moves.size() < lines) ? alpha : Math.max(alpha, values[lines - 1]);
         }
-        return randomAgent.getMove(player, bestMoves, state);
-    }
 
-    private int max(Player player, State state, int alpha, int beta, int depth) {
-        if (state.isTerminal() || depth >= getDepthLimit()) return getHeuristic().heuristic(player, state);
+        synchronized boolean isCutoff(int beta) {
+            return bestValue >= beta;
+        }
 
-        var moves = state.getMoves(player);
+        /**
+         * Orders the moves of equal value like the given moves, once every thread is done
+         */
+        void sort(List<Move> order) {
+            bestMoves.sort(Comparator.comparingInt(order::indexOf));
 
-        int v = Integer.MIN_VALUE;
-        for (Move move : moves) {
-            v = Math.max(v, min(player, state.expand(move), alpha, beta, depth + 1));
-            if (v >= beta) return v;
-            alpha = Math.max(alpha, v);
-        }
-        return v;
-    }
+            for (int i = 1; i < moves.size(); i++) {
+                var move = moves.get(i);
+                int value = values[i];
+                int rank = order.indexOf(move);
 
-    private int min(Player player, State state, int alpha, int beta, int depth) {
-        if (state.isTerminal() || depth >= getDepthLimit()) return getHeuristic().heuristic(player, state);
+                int index = i;
+                for (; index > 0 && values[index - 1] == value && order.indexOf(moves.get(index - 1)) > rank; index--) {
+                    moves.set(index, moves.get(index - 1));
+                }
+                moves.set(index, move);
+            }
+        }
 
-        var moves = state.getMoves(player.not());
+        /**
+         * @return the moves with exact values from best to worst, which are at least the lines and the best moves
+         */
+        List<Move> leaders() {
+            return moves.subList(0, Math.max(Math.min(lines, moves.size()), bestMoves.size()));
+        }
 
-        int v = Integer.MAX_VALUE;
-        for (Move move : moves) {
-            v = Math.min(v, max(player, state.expand(move), alpha, beta, depth + 1));
-            if (v <= alpha) return v;
-            beta = Math.min(beta, v);
+        int value(Move move) {
+            return values[moves.indexOf(move)];
         }
-        return v;
+
     }
+
 }
@@ -0,0 +1,308 @@
+package net.rahka.chess.game.agent;
+
+import lombok.Getter;
+import net.rahka.chess.game.Board;
+import net.rahka.chess.game.Move;
+import net.rahka.chess.game.PackedMove;
+import net.rahka.chess.game.Player;
+import net.rahka.chess.game.StagedMoveGenerator;
+import net.rahka.chess.game.State;
+import net.rahka.chess.game.agent.search.MoveOrdering;
+import net.rahka.chess.game.agent.search.TranspositionTable;
+
+import java.util.Arrays;
+
+/**
+ * The search stack of a single thread of a {@link MiniMaxAgent}: its own board, move ordering and statistics.
+ * The agent keeps the settings and the root bookkeeping, every subtree below a root move is searched by one of these.
+ * The transposition table is the only thing that may be shared with other searches.
+ * <p>
+ * Everything a node needs is allocated once per thread and indexed by ply: the move generators with their move lists
+ * and scores here, the killers in the {@link MoveOrdering} and the undo information in the {@link Board}.
+ */
+class MiniMaxSearch {
+
+    /**
+     * Leaves room for the windows around a score to be negated without overflowing
+     */
+    static final int INFINITY = Integer.MAX_VALUE - 1;
+
+    /**
+     * Must be a power of two, the node counter is masked with it
+     */
+    private static final int STOP_CHECK_INTERVAL = 1024;
+
+    private final MiniMaxAgent agent;
+
+    private final TranspositionTable transpositionTable;
+
+    private final MoveOrdering moveOrdering;
+
+    private StagedMoveGenerator[] generators = new StagedMoveGenerator[MoveOrdering.MAX_PLY];
+
+    private Player player;
+
+    private Board board;
+
+    private volatile long deadline;
+
+    /**
+     * The thread that asked for the move, interrupting it stops the search and so does its end
+     */
+    private Thread owner;
+
+    private volatile boolean stopped;
+
+    @Getter
+    private final SearchStatistics statistics = new SearchStatistics();
+
+    private boolean aborted;
+
+    MiniMaxSearch(MiniMaxAgent agent, TranspositionTable transpositionTable) {
+        this.agent = agent;
+        this.transpositionTable = transpositionTable;
+        this.moveOrdering = new MoveOrdering(agent.isMvvLva(), agent.isKillerMoves(), agent.isHistoryHeuristic());
+
+        for (int ply = 0; ply < generators.length; ply++) {
+            generators[ply] = new StagedMoveGenerator();
+        }
+    }
+
+    /**
+     * Sets up the search of a new root position, must be called by the thread that asks for the move
+     */
+    void prepare(Player player, State state, long deadline) {
+        this.owner = Thread.currentThread();
+        this.player = player;
+        this.board = state.createBoard();
+        this.deadline = deadline;
+
+        board.setHeuristic(agent.getHeuristic());
+        this.aborted = false;
+        this.stopped = false;
+
+        statistics.reset();
+        moveOrdering.clear();
+    }
+
+    /**
+     * Forgets the move ordering learned in earlier games
+     */
+    void reset() {
+        moveOrdering.reset();
+    }
+
+    long getNodes() {
+        return statistics.nodes;
+    }
+
+    /**
+     * Moves the time limit of a running search, it can be called from any thread
+     */
+    void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Makes the search unwind within the next {@link #STOP_CHECK_INTERVAL} nodes, it can be called from any thread
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return true if the search has been cut short, or would be at its next check
+     */
+    boolean isAborted() {
+        return aborted || stopped || isGone(owner);
+    }
+
+    /**
+     * Searches a single root move in the given window
+     *
+     * @return the value of the move for the root player
+     */
+    int searchRootMove(Move move, int depth, int alpha, int beta) {
+        board.makeMove(board.encode(move));
+        int value = -search(player.not(), depth, 1, -beta, -alpha, true);
+        board.unmakeMove();
+
+        return value;
+    }
+
+    /**
+     * Negamax principal variation search, the score is relative to the side to move. Every move but the first is
+     * searched with a null window first and only searched again if it might raise alpha.
+     *
+     * @param nullAllowed false right after a null move, so that two null moves never follow each other
+     */
+    private int search(Player side, int depth, int ply, int alpha, int beta, boolean nullAllowed) {
+        if (visit()) return 0;
+
+        if (board.isTerminal()) return evaluate(side);
+        if (depth <= 0) return quiesce(side, agent.getQuiescenceDepth(), ply, alpha, beta);
+
+        int hashMove = PackedMove.NONE;
+        if (transpositionTable != null) {
+            statistics.hashProbes++;
+            long entry = transpositionTable.probe(board.getHash());
+            if (entry != 0) {
+                statistics.hashHits++;
+                if (TranspositionTable.depth(entry) >= depth) {
+                    int score = TranspositionTable.score(entry);
+                    switch (TranspositionTable.bound(entry)) {
+                        case TranspositionTable.EXACT:
+                            return score;
+                        case TranspositionTable.LOWER_BOUND:
+                            if (score >= beta) return score;
+                            break;
+                        case TranspositionTable.UPPER_BOUND:
+                            if (score <= alpha) return score;
+                            break;
+                    }
+                }
+
+                hashMove = TranspositionTable.move(entry);
+            }
+        }
+
+        if (nullAllowed && agent.isNullMovePruning() && beta - alpha == 1 && depth > agent.getNullMoveReduction()
+                && board.hasNonPawnMaterial(side)) {
+            board.makeNullMove();
+            int value = -search(side.not(), depth - 1 - agent.getNullMoveReduction(), ply + 1, -beta, -beta + 1, false);
+            board.unmakeNullMove();
+
+            if (aborted) return 0;
+            if (value >= beta) return value;
+        }
+
+        int alphaOrigin = alpha;
+        int bestValue = -INFINITY;
+        int bestMove = PackedMove.NONE;
+
+        int searched = 0;
+        var moves = generator(ply).reset(board, side, hashMove, moveOrdering.scorer(ply), Board.ALL_MOVES);
+        for (int move = moves.next(); move != PackedMove.NONE; move = moves.next()) {
+            board.makeMove(move);
+            int value;
+            if (searched++ == 0) {
+                value = -search(side.not(), depth - 1, ply + 1, -beta, -alpha, true);
+            } else {
+                // anything above alpha sends the move to the full depth search below
+                value = alpha + 1;
+                if (agent.isLateMoveReductions() && searched > agent.getLateMoveThreshold()
+                        && depth >= agent.getLateMoveMinDepth()
+                        && !PackedMove.isCapture(move) && !PackedMove.isPromotion(move)) {
+                    int reduced = Math.max(depth - 1 - agent.getLateMoveReduction(), 0);
+                    value = -search(side.not(), reduced, ply + 1, -alpha - 1, -alpha, true);
+                }
+
+                if (value > alpha) {
+                    value = -search(side.not(), depth - 1, ply + 1, -alpha - 1, -alpha, true);
+                    if (value > alpha && value < beta) {
+                        value = -search(side.not(), depth - 1, ply + 1, -beta, -alpha, true);
+                    }
+                }
+            }
+            board.unmakeMove();
+
+            if (aborted) return 0;
+
+            if (value > bestValue) {
+                bestValue = value;
+                bestMove = move;
+            }
+
+            if (bestValue >= beta) {
+                statistics.cutoffs++;
+                if (searched == 1) statistics.firstMoveCutoffs++;
+
+                moveOrdering.cutoff(ply, move, depth);
+                break;
+            }
+            alpha = Math.max(alpha, bestValue);
+        }
+
+        if (transpositionTable != null) {
+            int bound;
+            if (bestValue <= alphaOrigin) {
+                bound = TranspositionTable.UPPER_BOUND;
+            } else if (bestValue >= beta) {
+                bound = TranspositionTable.LOWER_BOUND;
+            } else {
+                bound = TranspositionTable.EXACT;
+            }
+            transpositionTable.store(board.getHash(), depth, bound, bestValue, bestMove);
+        }
+
+        return bestValue;
+    }
+
+    /**
+     * Searches captures and promotions only until the position is quiet, the side to move may always stand pat
+     */
+    private int quiesce(Player side, int depth, int ply, int alpha, int beta) {
+        int bestValue = evaluate(side);
+        if (depth <= 0 || board.isTerminal() || bestValue >= beta) return bestValue;
+        alpha = Math.max(alpha, bestValue);
+
+        var moves = generator(ply).reset(board, side, PackedMove.NONE, moveOrdering.scorer(ply), Board.CAPTURES);
+        for (int move = moves.next(); move != PackedMove.NONE; move = moves.next()) {
+            board.makeMove(move);
+            int value = (visit()) ? 0 : -quiesce(side.not(), depth - 1, ply + 1, -beta, -alpha);
+            board.unmakeMove();
+
+            if (aborted) return 0;
+
+            if (value > bestValue) {
+                bestValue = value;
+                if (bestValue >= beta) break;
+                alpha = Math.max(alpha, bestValue);
+            }
+        }
+
+        return bestValue;
+    }
+
+    /**
+     * @return the move generator of a ply, the stack only grows for searches deeper than {@link MoveOrdering#MAX_PLY}
+     */
+    private StagedMoveGenerator generator(int ply) {
+        if (ply >= generators.length) {
+            int length = generators.length;
+            generators = Arrays.copyOf(generators, Math.max(ply + 1, length * 2));
+            for (int i = length; i < generators.length; i++) {
+                generators[i] = new StagedMoveGenerator();
+            }
+        }
+        return generators[ply];
+    }
+
+    /**
+     * Counts a node, and checks the time budget, the stop flag and whether the owner thread is gone every
+     * {@link #STOP_CHECK_INTERVAL} nodes. All three are cheap enough to poll, and once one of them trips every
+     * search frame returns right away.
+     *
+     * @return true if the search has been aborted
+     */
+    private boolean visit() {
+        if ((++statistics.nodes & (STOP_CHECK_INTERVAL - 1)) == 0 && (stopped || isGone(owner) || System.nanoTime() >= deadline)) {
+            aborted = true;
+        }
+        return aborted;
+    }
+
+    /**
+     * A search that outlives its owner, like pondering after the match thread has finished, is of no use to anyone
+     */
+    static boolean isGone(Thread owner) {
+        return owner.isInterrupted() || !owner.isAlive();
+    }
+
+    private int evaluate(Player side) {
+        statistics.evaluations++;
+        int value = board.evaluate(player);
+        return (side == player) ? value : -value;
+    }
+
+}
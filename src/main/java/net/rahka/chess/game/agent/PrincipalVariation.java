@@ -0,0 +1,30 @@
+package net.rahka.chess.game.agent;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import net.rahka.chess.game.Move;
+
+import java.util.List;
+
+/**
+ * A root move together with its score for the player to move and the line the search expects to follow it
+ */
+@Getter
+@RequiredArgsConstructor
+public class PrincipalVariation {
+
+    private final Move move;
+
+    private final int score;
+
+    /**
+     * Depth of the iteration that produced the score
+     */
+    private final int depth;
+
+    /**
+     * The expected moves of both players, starting with {@link #move}
+     */
+    private final List<Move> line;
+
+}
@@ -0,0 +1,17 @@
+package net.rahka.chess.game.agent;
+
+/**
+ * Receives the {@link SearchStatistics} of every search an agent finishes, on the thread that asked for the move
+ */
+public interface SearchListener {
+
+    void onSearchFinished(SearchStatistics statistics);
+
+    /**
+     * Called when the brothers of the first root move of an iteration have been handed to the thread pool, right
+     * before the thread that asked for the move waits for them
+     */
+    default void onRootSplit(int depth) {
+    }
+
+}
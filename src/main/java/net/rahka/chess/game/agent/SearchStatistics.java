@@ -0,0 +1,130 @@
+package net.rahka.chess.game.agent;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Counters of a search, or the sum of several searches. Every search thread counts into its own instance, which are
+ * added up once the move is found. Cutoffs are only counted in the main search, not in the quiescence search.
+ */
+public class SearchStatistics {
+
+    @Getter
+    long nodes;
+
+    /**
+     * Number of calls to the heuristic, at the leaves and at every quiescence node
+     */
+    @Getter
+    long evaluations;
+
+    @Getter
+    long cutoffs;
+
+    /**
+     * Cutoffs caused by the first move that was searched, the higher the share of these the better the move ordering
+     */
+    @Getter
+    long firstMoveCutoffs;
+
+    @Getter
+    long hashProbes;
+
+    @Getter
+    long hashHits;
+
+    /**
+     * Wall clock time of the search, for pondering searches this includes the time spent on the opponent's move
+     */
+    @Getter
+    long nanos;
+
+    /**
+     * Nodes visited by each completed iteration, indexed by depth
+     */
+    private long[] iterationNodes = new long[0];
+
+    void reset() {
+        nodes = evaluations = cutoffs = firstMoveCutoffs = hashProbes = hashHits = nanos = 0;
+        iterationNodes = new long[0];
+    }
+
+    void iterationFinished(int depth, long nodes) {
+        if (depth >= iterationNodes.length) {
+            iterationNodes = Arrays.copyOf(iterationNodes, depth + 1);
+        }
+        iterationNodes[depth] += nodes;
+    }
+
+    /**
+     * Adds the counters of another search to these, iterations of the same depth are added up as well
+     */
+    public synchronized void add(SearchStatistics other) {
+        addCounters(other);
+
+        for (int depth = 1; depth < other.iterationNodes.length; depth++) {
+            iterationFinished(depth, other.iterationNodes[depth]);
+        }
+    }
+
+    /**
+     * Adds everything but the iterations, for helper threads that start at different depths
+     */
+    void addCounters(SearchStatistics other) {
+        nodes += other.nodes;
+        evaluations += other.evaluations;
+        cutoffs += other.cutoffs;
+        firstMoveCutoffs += other.firstMoveCutoffs;
+        hashProbes += other.hashProbes;
+        hashHits += other.hashHits;
+        nanos += other.nanos;
+    }
+
+    /**
+     * @return the deepest completed iteration
+     */
+    public int getDepth() {
+        return Math.max(iterationNodes.length - 1, 0);
+    }
+
+    public long getIterationNodes(int depth) {
+        return (depth > 0 && depth < iterationNodes.length) ? iterationNodes[depth] : 0;
+    }
+
+    /**
+     * @return the growth of the node count from the previous iteration to this one, or 0 if either is unknown
+     */
+    public double getBranchingFactor(int depth) {
+        long previous = getIterationNodes(depth - 1);
+        return (previous > 0) ? (double) getIterationNodes(depth) / previous : 0;
+    }
+
+    public double getFirstMoveCutoffRate() {
+        return (cutoffs > 0) ? (double) firstMoveCutoffs / cutoffs : 0;
+    }
+
+    public double getHashHitRate() {
+        return (hashProbes > 0) ? (double) hashHits / hashProbes : 0;
+    }
+
+    public long getNodesPerSecond() {
+        return (nanos > 0) ? nodes * 1_000_000_000L / nanos : 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        var builder = new StringBuilder();
+        builder.append(String.format("%d nodes (%d/s), %d evaluations, %d cutoffs (%.1f%% first move), %.1f%% TT hits",
+                nodes, getNodesPerSecond(), evaluations, cutoffs, getFirstMoveCutoffRate() * 100, getHashHitRate() * 100));
+
+        if (getDepth() > 1) {
+            builder.append(", EBF");
+            for (int depth = 2; depth <= getDepth(); depth++) {
+                builder.append(String.format(" %d:%.2f", depth, getBranchingFactor(depth)));
+            }
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,96 @@
+package net.rahka.chess.game.agent.heuristics;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import net.rahka.chess.configuration.Configurable;
+import net.rahka.chess.configuration.ConfigurableInt;
+import net.rahka.chess.game.Player;
+import net.rahka.chess.game.State;
+import net.rahka.chess.game.agent.search.LockFreeHashTable;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the values of another heuristic by the Zobrist hash of the position. The cache is a
+ * {@link LockFreeHashTable} that always replaces, so the threads of a search can share it.
+ * <p>
+ * Only worth it for heuristics that look at the whole position, an {@link IncrementalHeuristic} is cheaper to
+ * evaluate than to look up.
+ */
+@Configurable(name = "Cached")
+@RequiredArgsConstructor
+public class CachedHeuristic implements Heuristic {
+
+    private static final int ENTRY_BYTES = 16;
+
+    /**
+     * Set in every entry, so that an empty slot never matches
+     */
+    private static final long VALID = 1L << 32;
+
+    /**
+     * Mixed into the key when the value is asked for black, heuristics need not be symmetric
+     */
+    private static final long BLACK_KEY = 0x9E3779B97F4A7C15L;
+
+    @ConfigurableInt(name = "Cache size (MB)", min = 1, max = 8192, def = 8)
+    final int cacheSize;
+
+    @Configurable(name = "Heuristic")
+    final Heuristic heuristic;
+
+    /**
+     * Created on first use, the cache size is not known yet while the fields are initialized
+     */
+    @Getter(value = AccessLevel.PRIVATE, lazy = true)
+    private final LockFreeHashTable table = new LockFreeHashTable(cacheSize, ENTRY_BYTES);
+
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+    @Override
+    public int heuristic(Player player, State state) {
+        long key = player.isWhite() ? state.getHash() : state.getHash() ^ BLACK_KEY;
+        var table = getTable();
+
+        long entry = table.probe(key);
+        if (entry != 0) {
+            hits.increment();
+            return (int) entry;
+        }
+
+        misses.increment();
+        int value = heuristic.heuristic(player, state);
+
+        table.store(key, VALID | (value & 0xFFFFFFFFL));
+        return value;
+    }
+
+    @Override
+    public int pawnValue() {
+        return heuristic.pawnValue();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long hits = getHits(), lookups = hits + getMisses();
+        return (lookups > 0) ? (double) hits / lookups : 0;
+    }
+
+    /**
+     * Forgets every value and resets the counters
+     */
+    public void clear() {
+        getTable().clear();
+        hits.reset();
+        misses.reset();
+    }
+
+}
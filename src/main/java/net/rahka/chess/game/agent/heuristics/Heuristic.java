@@ -7,4 +7,11 @@ public interface Heuristic {
 
     int heuristic(Player player, State state);
 
+    /**
+     * @return the value of a pawn, the unit of the windows and scales the agents are configured in
+     */
+    default int pawnValue() {
+        return 1;
+    }
+
 }
@@ -0,0 +1,42 @@
+package net.rahka.chess.game.agent.heuristics;
+
+import net.rahka.chess.game.Piece;
+import net.rahka.chess.game.Player;
+import net.rahka.chess.game.State;
+
+/**
+ * A heuristic that only depends on sums of values of pieces on squares. A {@link net.rahka.chess.game.Board} can keep
+ * these sums up to date while moves are made and unmade, so that evaluating one of its positions costs next to nothing.
+ */
+public interface IncrementalHeuristic extends Heuristic {
+
+    /**
+     * @return the number of independent sums the heuristic is made of
+     */
+    int terms();
+
+    /**
+     * @return what a piece on a square adds to a sum, it must not change for the lifetime of the heuristic
+     */
+    int value(int term, Piece piece, int square);
+
+    /**
+     * Combines the sums of a position into its value
+     */
+    int evaluate(Player player, int[] sums);
+
+    @Override
+    default int heuristic(Player player, State state) {
+        var sums = new int[terms()];
+        for (var piece : Piece.values()) {
+            for (long pieces = state.getBoard(piece); pieces != 0; pieces &= pieces - 1) {
+                int square = Long.numberOfTrailingZeros(pieces);
+                for (int term = 0; term < sums.length; term++) {
+                    sums[term] += value(term, piece, square);
+                }
+            }
+        }
+        return evaluate(player, sums);
+    }
+
+}
@@ -0,0 +1,153 @@
+package net.rahka.chess.game.agent.heuristics;
+
+import net.rahka.chess.configuration.Configurable;
+import net.rahka.chess.configuration.ConfigurableString;
+import net.rahka.chess.game.Piece;
+import net.rahka.chess.game.Player;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Material and a table of square values for every piece type, once for the middlegame and once for the endgame. The
+ * two scores are blended by the phase of the game, which is the weight of the pieces that are still on the board.
+ * The weights are read from a file, see the default piece-square-tables.yaml for its layout.
+ */
+@Configurable(name = "Piece-square tables")
+public class PieceSquareTableHeuristic implements IncrementalHeuristic {
+
+    private static final String DEFAULT_WEIGHTS = "/piece-square-tables.yaml";
+
+    /**
+     * The names of the piece types in the weights file, indexed by piece index modulo 6
+     */
+    private static final String[] PIECE_TYPES = {"pawn", "rook", "knight", "bishop", "queen", "king"};
+
+    /**
+     * The number of pieces of each type a player starts with
+     */
+    private static final int[] START_COUNTS = {8, 2, 2, 2, 1, 1};
+
+    private static final int MIDDLEGAME = 0, ENDGAME = 1, PHASE = 2;
+
+    /**
+     * Values per term, indexed by piece index times 64 plus square. Black values are negated, so every sum is white's
+     * score.
+     */
+    private final int[][] values = new int[3][12 * 64];
+
+    /**
+     * The phase of the starting position, and of any position that has as much material
+     */
+    private final int maxPhase;
+
+    private final int pawnValue;
+
+    public PieceSquareTableHeuristic(@ConfigurableString(name = "Weights file") String weightsFile) {
+        Map<String, Object> weights;
+        try (var in = open(weightsFile)) {
+            weights = new Yaml().load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the weights file " + weightsFile, e);
+        }
+
+        var phase = section(weights, "phase");
+        var middlegame = section(weights, "middlegame");
+        var endgame = section(weights, "endgame");
+
+        int startPhase = 0;
+        for (var piece : Piece.values()) {
+            int type = piece.index % 6;
+            int sign = piece.isWhite() ? 1 : -1;
+            int phaseWeight = weight(phase, PIECE_TYPES[type]);
+            startPhase += phaseWeight * START_COUNTS[type];
+
+            int middlegameMaterial = weight(section(middlegame, "material"), PIECE_TYPES[type]);
+            int endgameMaterial = weight(section(endgame, "material"), PIECE_TYPES[type]);
+            int[] middlegameTable = table(middlegame, PIECE_TYPES[type]);
+            int[] endgameTable = table(endgame, PIECE_TYPES[type]);
+            for (int square = 0; square < 64; square++) {
+                // the tables start at rank 8 from white's side, black sees them mirrored
+                int entry = piece.isWhite() ? square ^ 56 : square;
+
+                values[MIDDLEGAME][piece.index * 64 + square] = sign * (middlegameMaterial + middlegameTable[entry]);
+                values[ENDGAME][piece.index * 64 + square] = sign * (endgameMaterial + endgameTable[entry]);
+                values[PHASE][piece.index * 64 + square] = phaseWeight;
+            }
+        }
+
+        if (startPhase <= 0) throw new IllegalArgumentException("The phase weights of the starting position add up to " + startPhase);
+        maxPhase = startPhase;
+        pawnValue = Math.max(1, weight(section(middlegame, "material"), "pawn"));
+    }
+
+    /**
+     * A pawn is worth its middlegame material, so a weights file can use any unit
+     */
+    @Override
+    public int pawnValue() {
+        return pawnValue;
+    }
+
+    @Override
+    public int terms() {
+        return values.length;
+    }
+
+    @Override
+    public int value(int term, Piece piece, int square) {
+        return values[term][piece.index * 64 + square];
+    }
+
+    @Override
+    public int evaluate(Player player, int[] sums) {
+        // promotions can bring the phase above the start
+        long phase = Math.min(sums[PHASE], maxPhase);
+        int value = (int) ((sums[MIDDLEGAME] * phase + sums[ENDGAME] * (maxPhase - phase)) / maxPhase);
+        return player.isWhite() ? value : -value;
+    }
+
+    private static InputStream open(String weightsFile) throws IOException {
+        if (weightsFile == null || weightsFile.isEmpty()) {
+            var in = PieceSquareTableHeuristic.class.getResourceAsStream(DEFAULT_WEIGHTS);
+            if (in == null) throw new IOException("Missing resource " + DEFAULT_WEIGHTS);
+            return in;
+        }
+        return Files.newInputStream(Path.of(weightsFile));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> section(Map<String, Object> weights, String name) {
+        var section = weights.get(name);
+        if (!(section instanceof Map)) throw new IllegalArgumentException("The weights have no section " + name);
+        return (Map<String, Object>) section;
+    }
+
+    private static int weight(Map<String, Object> section, String name) {
+        var weight = section.get(name);
+        if (!(weight instanceof Number)) throw new IllegalArgumentException("The weights have no number for " + name);
+        return ((Number) weight).intValue();
+    }
+
+    private static int[] table(Map<String, Object> section, String name) {
+        var entries = section.get(name);
+        if (!(entries instanceof Iterable)) throw new IllegalArgumentException("The weights have no table for " + name);
+
+        var table = new int[64];
+        int square = 0;
+        for (var entry : (Iterable<?>) entries) {
+            if (square == 64 || !(entry instanceof Number)) {
+                throw new IllegalArgumentException("The table for " + name + " must hold 64 numbers");
+            }
+            table[square++] = ((Number) entry).intValue();
+        }
+        if (square != 64) throw new IllegalArgumentException("The table for " + name + " must hold 64 numbers");
+        return table;
+    }
+
+}
@@ -8,6 +8,11 @@ import net.rahka.chess.game.State;
 @Configurable(name = "Positional + Remaining")
 public class PositionalRemainingPiecesHeuristic implements Heuristic {
 
+    /**
+     * The value of one piece of every type
+     */
+    private static final int SET_VALUE = 1 + 5 + 3 + 3 + 9 + 100000;
+
     private int getPieceValue(Piece piece) {
         switch (piece) {
             case WHITE_PAWN:
@@ -38,21 +43,8 @@ public class PositionalRemainingPiecesHeuristic implements Heuristic {
         long coveredWhite = state.getThreatenedPositions(Player.WHITE) & state.getWhitePieces();
         long coveredBlack = state.getThreatenedPositions(Player.BLACK) & state.getBlackPieces();
 
-        for (int x = 0; x < 8; x++) {
-            for (int y = 0; y < 8; y++) {
-                long kernel = (-0x8000000000000000L >>> (63 - (y * 8 + x)));
-
-                if ((kernel & coveredWhite) != 0) {
-                    for (Piece piece : Piece.getWhite()) {
-                        blackScore += getPieceValue(piece);
-                    }
-                } else if ((kernel & coveredBlack) != 0) {
-                    for (Piece piece : Piece.getBlack()) {
-                        blackScore += getPieceValue(piece);
-                    }
-                }
-            }
-        }
+        // a threatened piece of either colour counts a full set of pieces for black
+        blackScore += SET_VALUE * Long.bitCount(coveredWhite | coveredBlack);
 
         for (Piece piece : Piece.values()) {
             if (piece.isWhite()) {
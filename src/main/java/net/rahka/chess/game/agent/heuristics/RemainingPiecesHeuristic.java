@@ -10,7 +10,7 @@ import net.rahka.chess.game.State;
 
 @Configurable(name = "Remaining")
 @RequiredArgsConstructor
-public class RemainingPiecesHeuristic implements Heuristic {
+public class RemainingPiecesHeuristic implements IncrementalHeuristic {
 
     private int getPieceValue(Piece piece) {
         switch (piece) {
@@ -55,4 +55,22 @@ public class RemainingPiecesHeuristic implements Heuristic {
         return alliedSum - enemySum;
     }
 
+    /**
+     * The material of white minus the material of black
+     */
+    @Override
+    public int terms() {
+        return 1;
+    }
+
+    @Override
+    public int value(int term, Piece piece, int square) {
+        return piece.isWhite() ? getPieceValue(piece) : -getPieceValue(piece);
+    }
+
+    @Override
+    public int evaluate(Player player, int[] sums) {
+        return player.isWhite() ? sums[0] : -sums[0];
+    }
+
 }
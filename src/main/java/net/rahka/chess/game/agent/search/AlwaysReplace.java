@@ -0,0 +1,16 @@
+package net.rahka.chess.game.agent.search;
+
+import net.rahka.chess.configuration.Configurable;
+
+/**
+ * Always keeps the most recent entry
+ */
+@Configurable(name = "Always replace")
+public class AlwaysReplace implements ReplacementScheme {
+
+    @Override
+    public boolean shouldReplace(int storedDepth, int depth) {
+        return true;
+    }
+
+}
@@ -0,0 +1,16 @@
+package net.rahka.chess.game.agent.search;
+
+import net.rahka.chess.configuration.Configurable;
+
+/**
+ * Keeps the entry that was searched the deepest, since it saved the most work
+ */
+@Configurable(name = "Depth-preferred")
+public class DepthPreferredReplacement implements ReplacementScheme {
+
+    @Override
+    public boolean shouldReplace(int storedDepth, int depth) {
+        return depth >= storedDepth;
+    }
+
+}
@@ -0,0 +1,72 @@
+package net.rahka.chess.game.agent.search;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size, power of two hash table of one long entry per key, shared between threads without locks. Every slot
+ * holds two longs, the entry and the key xor the entry, so a slot that was torn by two concurrent stores no longer
+ * matches its key and reads as a miss. An entry of 0 stands for an empty slot and can not be stored.
+ */
+public class LockFreeHashTable {
+
+    /**
+     * Interleaved slots, the key xor the entry at even indices and the entry at odd ones
+     */
+    private final long[] slots;
+
+    private final int mask;
+
+    /**
+     * @param entryBytes the memory one entry takes, with anything the owner keeps per slot besides the two longs
+     */
+    public LockFreeHashTable(int megabytes, int entryBytes) {
+        long size = Long.highestOneBit(Math.max(1, ((long) megabytes << 20) / entryBytes));
+        size = Math.min(size, 1 << 29);
+
+        this.slots = new long[(int) size * 2];
+        this.mask = (int) size - 1;
+    }
+
+    /**
+     * @return the index of the slot of the key, between 0 and {@link #size()}
+     */
+    public int index(long key) {
+        return (int) key & mask;
+    }
+
+    /**
+     * @return the entry stored for the key, or 0 if there is none
+     */
+    public long probe(long key) {
+        int slot = index(key) << 1;
+        long entry = slots[slot + 1];
+        return ((slots[slot] ^ entry) == key) ? entry : 0;
+    }
+
+    /**
+     * @return the entry of another key that the key would replace, or 0 if its slot is empty or already holds the key
+     */
+    public long occupant(long key) {
+        int slot = index(key) << 1;
+        long entry = slots[slot + 1];
+        return (entry != 0 && (slots[slot] ^ entry) != key) ? entry : 0;
+    }
+
+    public void store(long key, long entry) {
+        int slot = index(key) << 1;
+        slots[slot] = key ^ entry;
+        slots[slot + 1] = entry;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, 0);
+    }
+
+    /**
+     * @return the number of entries the table can hold
+     */
+    public int size() {
+        return slots.length / 2;
+    }
+
+}
@@ -0,0 +1,128 @@
+package net.rahka.chess.game.agent.search;
+
+import net.rahka.chess.game.PackedMove;
+import net.rahka.chess.game.StagedMoveGenerator.MoveScorer;
+
+import java.util.Arrays;
+
+/**
+ * Move ordering state of a single search. Captures are ordered most valuable victim first and least valuable
+ * attacker second, quiet moves by the two killer moves of their ply and then by the history table. Every component
+ * can be turned off on its own so that its effect on the node count can be measured.
+ */
+public class MoveOrdering {
+
+    public static final int MAX_PLY = 128;
+
+    /**
+     * Values of the piece types, indexed by piece index modulo 6
+     */
+    private static final int[] PIECE_VALUES = {1, 5, 3, 3, 9, 100};
+
+    private static final int HISTORY_LIMIT = 1 << 20;
+
+    private final boolean mvvLva, killerMoves, historyHeuristic;
+
+    private final int[][] killers = new int[MAX_PLY][2];
+
+    private final int[][] history = new int[12][64];
+
+    private final MoveScorer[] scorers = new MoveScorer[MAX_PLY];
+
+    public MoveOrdering(boolean mvvLva, boolean killerMoves, boolean historyHeuristic) {
+        this.mvvLva = mvvLva;
+        this.killerMoves = killerMoves;
+        this.historyHeuristic = historyHeuristic;
+
+        for (int ply = 0; ply < MAX_PLY; ply++) {
+            int[] plyKillers = killers[ply];
+            scorers[ply] = (move) -> score(move, plyKillers);
+        }
+    }
+
+    public boolean isEnabled() {
+        return mvvLva || killerMoves || historyHeuristic;
+    }
+
+    /**
+     * @return the scorer of a ply, or null if no ordering is enabled
+     */
+    public MoveScorer scorer(int ply) {
+        return isEnabled() ? scorers[Math.min(ply, MAX_PLY - 1)] : null;
+    }
+
+    /**
+     * Records a move that caused a beta cutoff, only quiet moves become killers or gain history
+     */
+    public void cutoff(int ply, int move, int depth) {
+        if (PackedMove.isCapture(move) || PackedMove.isPromotion(move)) return;
+
+        if (killerMoves) {
+            int[] plyKillers = killers[Math.min(ply, MAX_PLY - 1)];
+            if (plyKillers[0] != move) {
+                plyKillers[1] = plyKillers[0];
+                plyKillers[0] = move;
+            }
+        }
+
+        if (historyHeuristic) {
+            int[] pieceHistory = history[PackedMove.piece(move).index];
+            int to = PackedMove.to(move);
+            pieceHistory[to] += depth * depth;
+            if (pieceHistory[to] > HISTORY_LIMIT) age();
+        }
+    }
+
+    /**
+     * Forgets the killers of the previous search and halves the history, so that it still guides the next search
+     */
+    public void clear() {
+        for (int[] plyKillers : killers) {
+            Arrays.fill(plyKillers, PackedMove.NONE);
+        }
+        age();
+    }
+
+    /**
+     * Forgets the killers and the history entirely, for a new game
+     */
+    public void reset() {
+        for (int[] plyKillers : killers) {
+            Arrays.fill(plyKillers, PackedMove.NONE);
+        }
+        for (int[] pieceHistory : history) {
+            Arrays.fill(pieceHistory, 0);
+        }
+    }
+
+    private void age() {
+        for (int[] pieceHistory : history) {
+            for (int square = 0; square < 64; square++) {
+                pieceHistory[square] >>= 1;
+            }
+        }
+    }
+
+    private int score(int move, int[] plyKillers) {
+        if (PackedMove.isCapture(move) || PackedMove.isPromotion(move)) {
+            if (!mvvLva) return 0;
+
+            var victim = PackedMove.victim(move);
+            var spawn = PackedMove.spawn(move);
+            int gain = ((victim != null) ? value(victim.index) : 0) + ((spawn != null) ? value(spawn.index) : 0);
+            return gain * 16 - value(PackedMove.piece(move).index);
+        }
+
+        if (killerMoves) {
+            if (move == plyKillers[0]) return Integer.MAX_VALUE;
+            if (move == plyKillers[1]) return Integer.MAX_VALUE - 1;
+        }
+
+        return historyHeuristic ? history[PackedMove.piece(move).index][PackedMove.to(move)] : 0;
+    }
+
+    private static int value(int pieceIndex) {
+        return PIECE_VALUES[pieceIndex % 6];
+    }
+
+}
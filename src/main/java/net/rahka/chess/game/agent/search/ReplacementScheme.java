@@ -0,0 +1,10 @@
+package net.rahka.chess.game.agent.search;
+
+/**
+ * Decides whether a {@link TranspositionTable} entry may overwrite an entry of a different position
+ */
+public interface ReplacementScheme {
+
+    boolean shouldReplace(int storedDepth, int depth);
+
+}
@@ -0,0 +1,106 @@
+package net.rahka.chess.game.agent.search;
+
+import net.rahka.chess.game.PackedMove;
+
+/**
+ * Fixed size, power of two hash table of search results keyed by the Zobrist hash of a position. Every entry is
+ * packed into a single long:
+ * <pre>
+ * bits  0 -  1: bound type
+ * bits  2 -  7: remaining search depth
+ * bits  8 - 31: best move in its {@link PackedMove} encoding
+ * bits 32 - 63: score
+ * </pre>
+ * The entries are kept in a {@link LockFreeHashTable}, so the table is shared between search threads without locks.
+ * <p>
+ * Entries can be kept from one search to the next. Each slot remembers the generation it was written in, and entries
+ * of earlier generations give way to any new entry regardless of the {@link ReplacementScheme}.
+ */
+public class TranspositionTable {
+
+    public static final int EXACT = 1;
+
+    public static final int LOWER_BOUND = 2;
+
+    public static final int UPPER_BOUND = 3;
+
+    private static final int ENTRY_BYTES = 17;
+
+    private static final int MAX_DEPTH = 0x3F;
+
+    private final LockFreeHashTable table;
+
+    /**
+     * The generation each slot was last written in
+     */
+    private final byte[] generations;
+
+    private final ReplacementScheme replacementScheme;
+
+    private byte generation;
+
+    public TranspositionTable(int megabytes, ReplacementScheme replacementScheme) {
+        this.table = new LockFreeHashTable(megabytes, ENTRY_BYTES);
+        this.generations = new byte[table.size()];
+        this.replacementScheme = replacementScheme;
+    }
+
+    /**
+     * @return the entry stored for the key, or 0 if there is none
+     */
+    public long probe(long key) {
+        return table.probe(key);
+    }
+
+    public void store(long key, int depth, int bound, int score, int move) {
+        int index = table.index(key);
+
+        long stored = table.occupant(key);
+        if (stored != 0 && generations[index] == generation && !replacementScheme.shouldReplace(depth(stored), depth)) {
+            return;
+        }
+
+        long entry = ((long) score << 32)
+                | ((long) (move & 0xFFFFFF) << 8)
+                | (Math.min(depth, MAX_DEPTH) << 2)
+                | bound;
+
+        table.store(key, entry);
+        generations[index] = generation;
+    }
+
+    /**
+     * Starts a new search that may still use the entries of the previous ones, but no longer protects them
+     */
+    public void nextGeneration() {
+        generation++;
+    }
+
+    public void clear() {
+        table.clear();
+    }
+
+    /**
+     * @return the number of entries the table can hold
+     */
+    public int size() {
+        return table.size();
+    }
+
+    public static int score(long entry) {
+        return (int) (entry >> 32);
+    }
+
+    public static int move(long entry) {
+        return (int) (entry >>> 8) & 0xFFFFFF;
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> 2) & MAX_DEPTH;
+    }
+
+    public static int bound(long entry) {
+        return (int) entry & 0x3;
+    }
+
+}
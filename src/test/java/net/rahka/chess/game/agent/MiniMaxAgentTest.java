@@ -0,0 +1,52 @@
+package net.rahka.chess.game.agent;
+
+import net.rahka.chess.game.Match;
+import net.rahka.chess.game.Player;
+import net.rahka.chess.game.agent.heuristics.RemainingPiecesHeuristic;
+import net.rahka.chess.game.agent.search.DepthPreferredReplacement;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class MiniMaxAgentTest {
+
+    private static MiniMaxAgent agent(int threads) {
+        return new MiniMaxAgent(30, 0, 4, 1, true, 2, true, 4, 3, 1, threads, false, 16,
+                new DepthPreferredReplacement(), true, true, true,
+                new RemainingPiecesHeuristic(0, null), new RandomAgent(new Random(1)));
+    }
+
+    @Test
+    void interruptStopsParallelSearch() throws InterruptedException {
+        var agent = agent(3);
+        var state = new Match().getBoard().getBoardState();
+
+        var split = new CountDownLatch(1);
+        agent.setSearchListener(new SearchListener() {
+            @Override
+            public void onSearchFinished(SearchStatistics statistics) {
+            }
+
+            @Override
+            public void onRootSplit(int depth) {
+                split.countDown();
+            }
+        });
+
+        // a depth of 30 does not finish on its own, the search only ends if it sees the interrupt
+        var searcher = new Thread(() -> agent.getMove(Player.WHITE, state.getMoves(Player.WHITE), state));
+        searcher.setDaemon(true);
+        searcher.start();
+
+        Assertions.assertTrue(split.await(1, TimeUnit.MINUTES), "the search never handed root moves to the pool");
+        searcher.interrupt();
+        searcher.join(TimeUnit.MINUTES.toMillis(1));
+        Assertions.assertFalse(searcher.isAlive(), "the search did not stop");
+
+        agent.onGameEnd(null);
+    }
+
+}